@@ -1,5 +1,548 @@
 package org.watermedia.tools;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Cleaner;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Pool of direct {@link ByteBuffer}s grouped into power-of-two size classes, so per-frame buffers are
+ * recycled instead of waiting for the GC to run their cleaners (the usual cause of
+ * {@code OutOfMemoryError: Direct buffer memory} under load).
+ * <p>
+ * Every {@link #acquire(int) acquired} buffer must be handed back with {@link #release(ByteBuffer)} once
+ * the caller is done with it; enable {@link #leakDetection(boolean) leak detection} to find the ones that
+ * never are. Memory comes from {@link MemTool} under the {@code BufferTool} tag, and buffers the pool
+ * lets go of (past the cap, on {@link #trim()}, or above the largest size class) are freed right away.
+ */
 public class BufferTool {
+    private static final String MEM_TAG = "BufferTool";
+    private static final int MIN_CLASS_SHIFT = 12; // 4 KB
+    private static final int MAX_CLASS_SHIFT = 27; // 128 MB
+    private static final int CLASSES = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+
+    @SuppressWarnings("unchecked")
+    private static final ArrayDeque<ByteBuffer>[] POOLS = (ArrayDeque<ByteBuffer>[]) new ArrayDeque<?>[CLASSES];
+    private static final AtomicLong RETAINED = new AtomicLong(); // IDLE BYTES HELD BY THE POOLS AND THREAD CACHES
+    private static volatile long maxRetained = 256L * 1024 * 1024;
+
+    // PER-THREAD FAST PATH: ONE IDLE BUFFER PER SIZE CLASS, TAKEN/RETURNED WITHOUT TOUCHING THE SHARED LOCKS
+    private static final Cleaner CLEANER = Cleaner.create(ThreadTool.createFactory("BufferTool-Cleaner", Thread.MIN_PRIORITY));
+    private static final ThreadLocal<ThreadCache> THREAD_CACHE = ThreadLocal.withInitial(ThreadCache::new);
+
+    // LEAK DETECTION: ACQUIRE SITES OF OUTSTANDING BUFFERS, BUCKETED BY IDENTITY HASH
+    private static final System.Logger LOGGER = System.getLogger(BufferTool.class.getName());
+    private static volatile boolean leakDetection = false;
+    private static volatile Consumer<Throwable> leakHandler = site -> LOGGER.log(System.Logger.Level.WARNING, site.getMessage(), site);
+    private static final ConcurrentHashMap<Integer, Leak> LEAKS = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<ByteBuffer> LEAK_QUEUE = new ReferenceQueue<>();
+
+    static {
+        for (int i = 0; i < CLASSES; i++) {
+            POOLS[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Acquires a direct buffer of at least {@code capacity} bytes. The buffer is cleared, its limit is
+     * set to {@code capacity} and its order to {@link ByteOrder#LITTLE_ENDIAN} (the BGRA layout used by
+     * {@link DataTool}); the capacity may be larger.
+     *
+     * @param capacity requested size in bytes
+     * @return a buffer to hand back with {@link #release(ByteBuffer)}
+     */
+    public static ByteBuffer acquire(final int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Capacity cannot be negative");
+        if (leakDetection) reportLeaks();
+
+        final int cls = sizeClass(capacity);
+        ByteBuffer buffer = null;
+        if (cls >= 0) {
+            final ThreadCache cache = THREAD_CACHE.get();
+            buffer = cache.slots[cls];
+            if (buffer != null) {
+                cache.slots[cls] = null;
+                cache.bytes.addAndGet(-buffer.capacity());
+                RETAINED.addAndGet(-buffer.capacity());
+            } else {
+                final ArrayDeque<ByteBuffer> pool = POOLS[cls];
+                synchronized (pool) {
+                    buffer = pool.pollFirst();
+                }
+                if (buffer != null) RETAINED.addAndGet(-buffer.capacity());
+            }
+            if (buffer != null) MemTool.pooled(buffer, MEM_TAG, false); // HANDED OUT AGAIN
+        }
+        if (buffer == null) {
+            final int size = cls >= 0 ? 1 << (cls + MIN_CLASS_SHIFT) : capacity;
+            try {
+                buffer = MemTool.allocate(MEM_TAG, size);
+            } catch (final MemTool.BudgetExceededException e) {
+                trim(); // IDLE BUFFERS COUNT AGAINST THE BUDGET TOO; GIVE THEM BACK AND TRY ONCE MORE
+                buffer = MemTool.allocate(MEM_TAG, size);
+            }
+        }
+
+        buffer.clear().limit(capacity);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (leakDetection) track(buffer);
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquire(int)} to the pool. It must be the exact instance
+     * returned (not a slice or duplicate) and must not be used afterwards. Buffers that would take the
+     * pool past {@link #maxRetained(long) the retention cap} are freed.
+     * <p>
+     * A buffer that is not currently handed out by the pool (released twice, or never acquired from it)
+     * is logged and ignored, so it can never be pooled or freed under another holder. While leak detection
+     * is on, a buffer it is not tracking (acquired before detection was enabled) is logged and left to the GC.
+     *
+     * @param buffer the buffer to recycle; {@code null} is ignored
+     */
+    public static void release(final ByteBuffer buffer) {
+        if (buffer == null) return;
+        final boolean tracked = !LEAKS.isEmpty() && untrack(buffer); // ALSO DROPS ENTRIES LEFT BY A TOGGLE RACE
+        if (leakDetection && !tracked) {
+            LOGGER.log(System.Logger.Level.WARNING, "Released a direct buffer (" + buffer.capacity() + " bytes) that leak detection is not tracking;"
+                    + " it was acquired before detection was enabled or released twice, leaving it to the GC");
+            return;
+        }
+
+        final int capacity = buffer.capacity();
+        final int cls = buffer.isDirect() && Integer.bitCount(capacity) == 1 ? sizeClass(capacity) : -1;
+        // CHECKED ON EVERY RELEASE: A BUFFER POOLED TWICE WOULD BE HANDED TO TWO HOLDERS, AND FREED UNDER ONE OF THEM
+        if (cls < 0 ? !MemTool.free(buffer) : !MemTool.pooled(buffer, MEM_TAG, true)) {
+            LOGGER.log(System.Logger.Level.WARNING, "Released a buffer (" + capacity + " bytes) that the pool has not handed out;"
+                    + " it was released twice or never acquired, ignoring it");
+            return;
+        }
+
+        if (RETAINED.addAndGet(capacity) > maxRetained) {
+            RETAINED.addAndGet(-capacity);
+            discard(buffer); // OVER THE CAP: LET IT GO
+            return;
+        }
+
+        final ThreadCache cache = THREAD_CACHE.get();
+        if (cache.slots[cls] == null) {
+            cache.slots[cls] = buffer;
+            cache.bytes.addAndGet(capacity);
+            return;
+        }
+        final ArrayDeque<ByteBuffer> pool = POOLS[cls];
+        synchronized (pool) {
+            pool.offerFirst(buffer); // LIFO: THE MOST RECENTLY USED BUFFER IS THE WARMEST
+        }
+    }
+
+    /**
+     * Sets the maximum number of idle bytes the pool keeps; buffers released past it are freed.
+     */
+    public static void maxRetained(final long bytes) {
+        if (bytes < 0) throw new IllegalArgumentException("Cap cannot be negative");
+        maxRetained = bytes;
+    }
+
+    public static long maxRetained() {
+        return maxRetained;
+    }
+
+    /**
+     * @return idle bytes currently held by the pool
+     */
+    public static long retainedBytes() {
+        return RETAINED.get();
+    }
+
+    /**
+     * Frees every idle buffer held by the shared pools and the calling thread's cache. Buffers parked in
+     * other threads' caches stay there until reused or their thread dies.
+     */
+    public static void trim() {
+        final ThreadCache cache = THREAD_CACHE.get();
+        for (int i = 0; i < CLASSES; i++) {
+            if (cache.slots[i] != null) {
+                RETAINED.addAndGet(-cache.slots[i].capacity());
+                cache.bytes.addAndGet(-cache.slots[i].capacity());
+                discard(cache.slots[i]);
+                cache.slots[i] = null;
+            }
+            final ArrayDeque<ByteBuffer> pool = POOLS[i];
+            synchronized (pool) {
+                ByteBuffer buffer;
+                while ((buffer = pool.pollFirst()) != null) {
+                    RETAINED.addAndGet(-buffer.capacity());
+                    discard(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Enables or disables leak detection. While enabled every acquire records its call site; buffers that
+     * get garbage collected without being released are reported to the {@link #leakHandler(Consumer) leak
+     * handler} with that site as the stack trace. Costs a stack walk per acquire, so keep it for debugging.
+     * Disabling it forgets every tracked buffer.
+     */
+    public static void leakDetection(final boolean enabled) {
+        leakDetection = enabled;
+        if (!enabled) {
+            for (final Leak head: LEAKS.values()) {
+                for (Leak node = head; node != null; node = node.next) node.clear();
+            }
+            LEAKS.clear();
+            while (LEAK_QUEUE.poll() != null); // ALREADY ENQUEUED BEFORE THEY WERE CLEARED
+        }
+    }
+
+    public static boolean leakDetection() {
+        return leakDetection;
+    }
+
+    /**
+     * Sets the receiver of leak reports; by default they are logged as warnings through the
+     * {@link System.Logger platform logger} named after this class.
+     */
+    public static void leakHandler(final Consumer<Throwable> handler) {
+        leakHandler = Objects.requireNonNull(handler, "Handler cannot be null");
+    }
+
+    /**
+     * Reports every tracked buffer collected so far without having been released.
+     *
+     * @return the number of leaks reported
+     */
+    public static int reportLeaks() {
+        int count = 0;
+        Reference<? extends ByteBuffer> ref;
+        while ((ref = LEAK_QUEUE.poll()) != null) {
+            final Leak leak = (Leak) ref;
+            if (remove(leak.hash, leak, null)) {
+                count++;
+                leakHandler.accept(leak.site);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Creates a ring of {@code slots} preallocated frames of {@code frameBytes} each, for handing frames from one
+     * producer thread (the decoder) to one consumer thread (the renderer) without locks or allocation.
+     * Slot memory comes from {@link MemTool} under the {@code BufferTool} tag and is freed on {@link FrameRing#close()};
+     * neither {@link #release(ByteBuffer)} nor {@link MemTool#free(ByteBuffer)} accepts a slot.
+     *
+     * @param policy what the producer does when every slot holds an unconsumed frame
+     */
+    public static FrameRing createFrameRing(final int slots, final int frameBytes, final RingPolicy policy) {
+        if (slots < 2) throw new IllegalArgumentException("A ring needs at least 2 slots");
+        if (frameBytes < 0) throw new IllegalArgumentException("Frame size cannot be negative");
+        return new FrameRing(slots, frameBytes, Objects.requireNonNull(policy, "Policy cannot be null"));
+    }
+
+    // SIZE CLASS INDEX FOR capacity, OR -1 WHEN IT IS TOO LARGE TO POOL
+    private static int sizeClass(final int capacity) {
+        final int shift = Math.max(MIN_CLASS_SHIFT, 32 - Integer.numberOfLeadingZeros(capacity - 1));
+        return shift > MAX_CLASS_SHIFT ? -1 : shift - MIN_CLASS_SHIFT;
+    }
+
+    // FREES AN IDLE BUFFER THE POOL OWNS
+    private static void discard(final ByteBuffer buffer) {
+        MemTool.pooled(buffer, MEM_TAG, false);
+        MemTool.free(buffer);
+    }
+
+    private static void track(final ByteBuffer buffer) {
+        final Leak leak = new Leak(buffer, new Throwable("Leaked direct buffer (" + buffer.capacity() + " bytes) acquired here"));
+        LEAKS.compute(leak.hash, (k, head) -> {
+            leak.next = head;
+            return leak;
+        });
+    }
+
+    private static boolean untrack(final ByteBuffer buffer) {
+        return remove(System.identityHashCode(buffer), null, buffer);
+    }
+
+    // UNLINKS THE NODE THAT IS leak OR REFERS TO buffer FROM ITS BUCKET; RETURNS WHETHER IT WAS FOUND
+    private static boolean remove(final int hash, final Leak leak, final ByteBuffer buffer) {
+        final boolean[] found = new boolean[1];
+        LEAKS.computeIfPresent(hash, (k, head) -> {
+            Leak prev = null;
+            for (Leak node = head; node != null; prev = node, node = node.next) {
+                if (node == leak || (buffer != null && node.refersTo(buffer))) {
+                    found[0] = true;
+                    node.clear(); // A CLEARED REFERENCE IS NEVER ENQUEUED
+                    if (prev == null) return node.next;
+                    prev.next = node.next;
+                    return head;
+                }
+            }
+            return head;
+        });
+        return found[0];
+    }
+
+    private static final class Leak extends PhantomReference<ByteBuffer> {
+        private final int hash;
+        private final Throwable site;
+        private Leak next; // GUARDED BY THE BUCKET'S compute
+
+        private Leak(final ByteBuffer buffer, final Throwable site) {
+            super(buffer, LEAK_QUEUE);
+            this.hash = System.identityHashCode(buffer);
+            this.site = site;
+        }
+    }
+
+    private static final class ThreadCache {
+        private final ByteBuffer[] slots = new ByteBuffer[CLASSES];
+        private final AtomicLong bytes = new AtomicLong();
+
+        private ThreadCache() {
+            // WHEN THE OWNING THREAD DIES ITS CACHED BUFFERS GO WITH IT; GIVE THEIR BYTES BACK TO THE CAP
+            final AtomicLong bytes = this.bytes;
+            CLEANER.register(this, () -> RETAINED.addAndGet(-bytes.get()));
+        }
+    }
+
+    /**
+     * What the producer of a {@link FrameRing} does when every slot holds a frame the consumer has not taken yet.
+     */
+    public enum RingPolicy {
+        /** Drop the oldest unconsumed frame; the producer never waits for the consumer to catch up. */
+        DROP_OLDEST,
+        /** Wait in {@link FrameRing#claim()} until the consumer takes a frame. */
+        BLOCK
+    }
+
+    // PADDING BY INHERITANCE: THE JVM LAYS OUT SUPERCLASS FIELDS FIRST, SO head AND tail END UP AT LEAST A
+    // CACHE LINE APART AND THE PRODUCER'S WRITES DO NOT INVALIDATE THE CONSUMER'S LINE (AND VICE VERSA)
+    private abstract static class RingPadHead {
+        long p00, p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    private abstract static class RingHead extends RingPadHead {
+        volatile long head; // FRAMES PUBLISHED; WRITTEN BY THE PRODUCER ONLY
+        long dropped; // PRODUCER ONLY
+        volatile int producer; // IDLE, CLAIMED OR CLOSED; CAS BY THE PRODUCER AND close
+    }
+
+    private abstract static class RingPadTail extends RingHead {
+        long p10, p11, p12, p13, p14, p15, p16, p17;
+    }
+
+    private abstract static class RingTail extends RingPadTail {
+        volatile long tail; // NEXT FRAME TO CONSUME; CAS BY THE CONSUMER (TAKE) AND THE PRODUCER (DROP)
+        volatile long held = -1; // SEQUENCE THE CONSUMER HOLDS OR IS ABOUT TO TAKE, -1 IF NONE, -2 ONCE CLOSED
+        long skipped; // CONSUMER ONLY
+    }
+
+    private abstract static class RingPadEnd extends RingTail {
+        long p20, p21, p22, p23, p24, p25, p26, p27;
+    }
+
+    /**
+     * Bounded single-producer/single-consumer ring of preallocated direct frames, created by
+     * {@link #createFrameRing(int, int, RingPolicy)}. Frame {@code n} lives in slot {@code n % slots}.
+     * <p>
+     * Producer: {@link #claim()} a slot, fill it, {@link #publish()} it. Consumer: {@link #acquireLatest()} or
+     * {@link #acquireNext()}, read, {@link #release()}. Every call is a few volatile reads and at most one CAS;
+     * the only wait is the producer's, under {@link RingPolicy#BLOCK} or when the slot it needs is the frame
+     * the consumer is still holding, so release frames promptly. Each side must stay on one thread at a time.
+     * Once {@link #close() closed}, every producer and consumer call throws {@link IllegalStateException}.
+     */
+    public static final class FrameRing extends RingPadEnd implements AutoCloseable {
+        private static final int IDLE = 0, CLAIMED = 1, CLOSED = 2; // producer STATES
+        private static final long NOT_HELD = -1, HELD_CLOSED = -2; // held SENTINELS
+        private static final VarHandle HEAD, TAIL, HELD, PRODUCER;
+        static {
+            try {
+                final MethodHandles.Lookup lookup = MethodHandles.lookup();
+                HEAD = lookup.findVarHandle(RingHead.class, "head", long.class);
+                PRODUCER = lookup.findVarHandle(RingHead.class, "producer", int.class);
+                TAIL = lookup.findVarHandle(RingTail.class, "tail", long.class);
+                HELD = lookup.findVarHandle(RingTail.class, "held", long.class);
+            } catch (final ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final ByteBuffer[] slots;
+        private final int frameBytes;
+        private final RingPolicy policy;
+
+        private FrameRing(final int slots, final int frameBytes, final RingPolicy policy) {
+            this.slots = new ByteBuffer[slots];
+            this.frameBytes = frameBytes;
+            this.policy = policy;
+            try {
+                for (int i = 0; i < slots; i++) {
+                    this.slots[i] = MemTool.allocate(MEM_TAG, frameBytes).order(ByteOrder.LITTLE_ENDIAN);
+                    MemTool.pooled(this.slots[i], MEM_TAG, true); // OWNED BY THE RING, NOT BY WHOEVER READS IT
+                }
+            } catch (final RuntimeException e) {
+                this.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Producer: returns the slot for the next frame, cleared and little-endian, to fill and {@link #publish()}.
+         * Under {@link RingPolicy#DROP_OLDEST} a full ring drops its oldest unconsumed frame; under
+         * {@link RingPolicy#BLOCK} this waits for the consumer instead.
+         *
+         * @return the slot, or {@code null} if the thread was interrupted while waiting
+         * @throws IllegalStateException if the previous claim was not published, or the ring is closed
+         */
+        public ByteBuffer claim() {
+            // CLAIMED KEEPS close FROM FREEING THE SLOT WHILE WE WAIT FOR IT OR FILL IT
+            if (!PRODUCER.compareAndSet(this, IDLE, CLAIMED)) {
+                throw new IllegalStateException(this.producer == CLOSED ? "Frame ring is closed" : "Previous frame was claimed but not published");
+            }
+            final long h = this.head; // OWN FIELD
+            final long reuse = h - this.slots.length; // FRAME WHOSE SLOT WE ARE ABOUT TO OVERWRITE
+            for (int spins = 0;; spins++) {
+                final long t = (long) TAIL.getVolatile(this);
+                if (t <= reuse) {
+                    if (this.policy == RingPolicy.DROP_OLDEST) {
+                        if (TAIL.compareAndSet(this, t, t + 1)) this.dropped++;
+                        continue; // LOST THE RACE: THE CONSUMER TOOK IT, SO CHECK held
+                    }
+                } else if (reuse < 0 || (long) HELD.getVolatile(this) != reuse) { // FIRST LAP: NOTHING TO REUSE
+                    break;
+                }
+                if (!backoff(spins)) {
+                    PRODUCER.setVolatile(this, IDLE);
+                    return null;
+                }
+            }
+            return this.slots[(int) (h % this.slots.length)].clear();
+        }
+
+        /**
+         * Producer: makes the claimed frame visible to the consumer.
+         */
+        public void publish() {
+            final int state = this.producer;
+            if (state != CLAIMED) throw new IllegalStateException(state == CLOSED ? "Frame ring is closed" : "No frame was claimed");
+            HEAD.setRelease(this, this.head + 1);
+            PRODUCER.setVolatile(this, IDLE);
+        }
+
+        /**
+         * Consumer: takes the newest published frame, skipping (and counting as dropped) any older ones.
+         *
+         * @return the frame, as the producer left it, or {@code null} if nothing new was published
+         * @throws IllegalStateException if the previous frame was not released, or the ring is closed
+         */
+        public ByteBuffer acquireLatest() {
+            return this.acquire(true);
+        }
+
+        /**
+         * Consumer: takes the oldest unconsumed frame, for consumers that must see every frame.
+         *
+         * @return the frame, as the producer left it, or {@code null} if nothing new was published
+         * @throws IllegalStateException if the previous frame was not released, or the ring is closed
+         */
+        public ByteBuffer acquireNext() {
+            return this.acquire(false);
+        }
+
+        /**
+         * Consumer: hands the acquired frame back; it must not be touched afterwards.
+         */
+        public void release() {
+            final long held = this.held;
+            if (held < 0) throw new IllegalStateException(held == HELD_CLOSED ? "Frame ring is closed" : "No frame was acquired");
+            HELD.setVolatile(this, NOT_HELD);
+        }
+
+        private ByteBuffer acquire(final boolean latest) {
+            final long held = this.held;
+            if (held == HELD_CLOSED) throw new IllegalStateException("Frame ring is closed");
+            if (held >= 0) throw new IllegalStateException("Previous frame was acquired but not released");
+            for (;;) {
+                final long t = (long) TAIL.getVolatile(this);
+                final long h = (long) HEAD.getAcquire(this);
+                if (t >= h) return null;
+                final long take = latest ? h - 1 : t;
+                // ANNOUNCE THE FRAME BEFORE TAKING IT: A PRODUCER THAT SEES tail MOVE PAST IT ALSO SEES held. ONLY close
+                // MOVES held AWAY FROM NOT_HELD BEHIND OUR BACK, AND ONCE IT IS ANNOUNCED close CANNOT FREE THE SLOT
+                if (!HELD.compareAndSet(this, NOT_HELD, take)) throw new IllegalStateException("Frame ring is closed");
+                if (TAIL.compareAndSet(this, t, take + 1)) {
+                    this.skipped += take - t;
+                    return this.slots[(int) (take % this.slots.length)];
+                }
+                HELD.setVolatile(this, NOT_HELD); // THE PRODUCER DROPPED t MEANWHILE
+            }
+        }
+
+        /**
+         * @return frames published but not taken yet
+         */
+        public int size() {
+            return (int) Math.max(0, this.head - this.tail);
+        }
+
+        public int capacity() {
+            return this.slots.length;
+        }
+
+        public int frameBytes() {
+            return this.frameBytes;
+        }
+
+        /**
+         * @return frames that never reached the consumer: dropped by the producer or skipped by {@link #acquireLatest()}
+         */
+        public long dropped() {
+            return this.dropped + this.skipped;
+        }
+
+        /**
+         * Frees every slot; a no-op when already closed. Both sides must be done with the ring: afterwards every
+         * call on it throws, and no frame taken from it may be touched.
+         *
+         * @throws IllegalStateException if the producer has a claimed frame or the consumer holds one; nothing is freed
+         */
+        @Override
+        public void close() {
+            if (!PRODUCER.compareAndSet(this, IDLE, CLOSED)) {
+                if (this.producer == CLOSED) return;
+                throw new IllegalStateException("Cannot close a frame ring while a claimed frame is not published");
+            }
+            if (!HELD.compareAndSet(this, NOT_HELD, HELD_CLOSED)) {
+                PRODUCER.setVolatile(this, IDLE);
+                throw new IllegalStateException("Cannot close a frame ring while a frame is acquired");
+            }
+            for (int i = 0; i < this.slots.length; i++) {
+                if (this.slots[i] != null) discard(this.slots[i]);
+                this.slots[i] = null;
+            }
+        }
 
+        // SPIN BRIEFLY, THEN YIELD, THEN PARK IN SHORT STEPS; false IF INTERRUPTED
+        private static boolean backoff(final int spins) {
+            if (spins < 64) {
+                Thread.onSpinWait();
+            } else if (spins < 128) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(50_000);
+            }
+            return !Thread.currentThread().isInterrupted();
+        }
+    }
 }
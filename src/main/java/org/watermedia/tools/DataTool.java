@@ -1,14 +1,37 @@
 package org.watermedia.tools;
 
+import java.io.IOException;
 import java.net.URLDecoder;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class DataTool {
+    private static final String MEM_TAG = "DataTool";
+
+    // FRAMES WITH AT LEAST THIS MANY PIXELS ARE CONVERTED IN PARALLEL ROW BANDS (DEFAULT: 1080p)
+    private static volatile int parallelThreshold = 1920 * 1080;
+    private static volatile ForkJoinPool parallelPool = ForkJoinPool.commonPool();
+
+    // MAGIC NUMBERS KNOWN TO sniff; REPLACED AS A WHOLE ON registerSignature
+    private static volatile Signatures signatures = new Signatures(Signatures.builtin());
+
     public static boolean startsWith(final ByteBuffer buffer, final int offset, final byte[] header) {
         if (buffer.limit() - offset < header.length) return false;
         for (int i = 0; i < header.length; i++) {
@@ -17,6 +40,63 @@ public class DataTool {
         return true;
     }
 
+    /**
+     * Identifies the media type of {@code data} from its leading bytes (read from its position, which is not
+     * moved), checking every known signature in one pass: built in are PNG, JPEG, GIF, WebP, BMP, TIFF, AVIF,
+     * HEIC, ISO-BMFF (MP4/QuickTime/M4A), Matroska/WebM, Ogg (Opus/Vorbis/Theora/FLAC), MPEG-TS, AVI, WAV,
+     * FLAC, MP3 and AAC. When several signatures match, the one constraining the most bits wins. A few hundred
+     * bytes are plenty.
+     *
+     * @return the MIME type (e.g. {@code image/webp}), or {@code null} if nothing matches
+     */
+    public static String sniff(final ByteBuffer data) {
+        final Signatures current = signatures;
+        final int base = data.position();
+        final int length = data.remaining();
+
+        Signature best = null;
+        if (length > 0) {
+            for (final Signature signature: current.byFirst[data.get(base) & 0xFF]) {
+                if (signature.matches(data, base, length)) {
+                    best = signature;
+                    break; // BUCKETS ARE SORTED MOST SPECIFIC FIRST
+                }
+            }
+        }
+        for (final Signature signature: current.anchored) {
+            if (best != null && Signatures.ORDER.compare(signature, best) >= 0) break;
+            if (signature.matches(data, base, length)) {
+                best = signature;
+                break;
+            }
+        }
+        return best == null ? null : best.type;
+    }
+
+    /**
+     * Teaches {@link #sniff(ByteBuffer)} a new signature. On equal specificity it takes precedence over the
+     * ones registered before it, built-ins included.
+     *
+     * @param type    MIME type reported on a match
+     * @param offset  where the pattern starts
+     * @param pattern whitespace separated tokens: hex bytes ({@code 1A}), wildcards ({@code ??}) and quoted
+     *                ASCII ({@code 'RIFF'}), e.g. {@code "'RIFF' ?? ?? ?? ?? 'WEBP'"}
+     */
+    public static void registerSignature(final String type, final int offset, final String pattern) {
+        final byte[][] parsed = Signature.parse(pattern);
+        registerSignature(type, offset, parsed[0], parsed[1]);
+    }
+
+    /**
+     * Teaches {@link #sniff(ByteBuffer)} a new signature: data matches when
+     * {@code (data[offset + i] & mask[i]) == (bytes[i] & mask[i])} for every {@code i}.
+     */
+    public static synchronized void registerSignature(final String type, final int offset, final byte[] bytes, final byte[] mask) {
+        final List<Signature> all = new ArrayList<>(signatures.all);
+        all.add(new Signature(type, offset, bytes, mask, all.size()));
+        signatures = new Signatures(all);
+    }
+
     public static boolean startsWith(final String str, final String... prefixes) {
         Objects.requireNonNull(str, "String cannot be null");
         Objects.requireNonNull(prefixes, "Prefix array cannot be null");
@@ -78,6 +158,12 @@ public class DataTool {
     }
 
     public static int readBytesAsInt(final ByteBuffer buffer, final int length, final ByteOrder order) {
+        if (length > 0 && length <= 4) {
+            final int index = buffer.position();
+            if (buffer.limit() - index < length) throw new BufferUnderflowException();
+            buffer.position(index + length);
+            return (int) (order == ByteOrder.BIG_ENDIAN ? getBE(buffer, index, length) : getLE(buffer, index, length));
+        }
         int value = 0;
         for (int i = 0; i < length; i++) {
             value |= (buffer.get() & 0xFF) << shiftFor((length * 8) - 8, i * 8, order);
@@ -86,6 +172,12 @@ public class DataTool {
     }
 
     public static long readBytesAsLong(final ByteBuffer buffer, final int length, final ByteOrder order) {
+        if (length > 0 && length <= 8) {
+            final int index = buffer.position();
+            if (buffer.limit() - index < length) throw new BufferUnderflowException();
+            buffer.position(index + length);
+            return order == ByteOrder.BIG_ENDIAN ? getBE(buffer, index, length) : getLE(buffer, index, length);
+        }
         long value = 0;
         for (int i = 0; i < length; i++) {
             value |= (long) (buffer.get() & 0xFF) << shiftFor((length * 8) - 8, i * 8, order);
@@ -125,6 +217,33 @@ public class DataTool {
         return order == ByteOrder.BIG_ENDIAN ? top - pos : pos;
     }
 
+    // ABSOLUTE 1-8 BYTE READS: ONE WIDE LOAD WHEN 8 BYTES ARE ADDRESSABLE, BYTE BY BYTE ONLY AT THE TAIL
+    private static long getBE(final ByteBuffer buffer, final int index, final int length) {
+        if (buffer.limit() - index >= 8) {
+            long raw = buffer.getLong(index);
+            if (buffer.order() == ByteOrder.LITTLE_ENDIAN) raw = Long.reverseBytes(raw);
+            return raw >>> (64 - (length << 3));
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (buffer.get(index + i) & 0xFF);
+        }
+        return value;
+    }
+
+    private static long getLE(final ByteBuffer buffer, final int index, final int length) {
+        if (buffer.limit() - index >= 8) {
+            long raw = buffer.getLong(index);
+            if (buffer.order() == ByteOrder.BIG_ENDIAN) raw = Long.reverseBytes(raw);
+            return length == 8 ? raw : raw & ((1L << (length << 3)) - 1);
+        }
+        long value = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            value = (value << 8) | (buffer.get(index + i) & 0xFF);
+        }
+        return value;
+    }
+
     public static void rgbaToBgra(final ByteBuffer buffer, final int pixel, final byte a) {
         final int r = (pixel >> 16) & 0xFF;
         final int g = (pixel >> 8) & 0xFF;
@@ -138,69 +257,770 @@ public class DataTool {
     // CONVERTS YUV TO BGRA INT ARRAY (USED FOR ANIMATION COMPOSITING)
     // INT LAYOUT: (A<<24 | R<<16 | G<<8 | B) - WHEN WRITTEN AS LITTLE-ENDIAN GIVES [B,G,R,A] BYTES
     public static int[] yuvToBgra(final byte[] yP, final byte[] uP, final byte[] vP, final int w, final int h, final int yS, final int uvS) {
-        final int[] bgra = new int[w * h];
-        for (int py = 0; py < h; py++)
+        return yuvToBgra(YuvFormat.I420, YuvMatrix.BT601_LIMITED, yP, uP, vP, w, h, yS, uvS, new int[w * h]);
+    }
+
+    /**
+     * Converts YUV directly into a new BGRA buffer. The caller owns it: hand it to {@link MemTool#free(ByteBuffer)}
+     * once done, or it counts against the {@link MemTool#budget(long) off-heap budget} until collected.
+     *
+     * @throws MemTool.BudgetExceededException if the frame does not fit in the budget
+     */
+    public static ByteBuffer yuvToBgraBuf(final byte[] yP, final byte[] uP, final byte[] vP, final int w, final int h, final int yS, final int uvS) {
+        final ByteBuffer bgra = MemTool.allocate(MEM_TAG, w * h * 4).order(ByteOrder.LITTLE_ENDIAN);
+        return yuvToBgra(YuvFormat.I420, YuvMatrix.BT601_LIMITED, yP, uP, vP, w, h, yS, uvS, bgra);
+    }
+
+    /**
+     * Converts a YUV frame into a caller-owned BGRA {@code int[]} canvas, allocating nothing.
+     * Pixels are packed as {@code A<<24 | R<<16 | G<<8 | B}, row-major with a stride of {@code w}.
+     * For the semi-planar formats ({@link YuvFormat#NV12}, {@link YuvFormat#NV21}) {@code uP} holds the
+     * interleaved chroma plane and {@code vP} is ignored.
+     *
+     * @param uvS chroma row stride in bytes (for semi-planar formats, the stride of the interleaved plane)
+     * @param dst destination canvas, at least {@code w * h} long
+     * @return {@code dst}
+     */
+    public static int[] yuvToBgra(final YuvFormat format, final YuvMatrix matrix, final byte[] yP, final byte[] uP, final byte[] vP,
+                                  final int w, final int h, final int yS, final int uvS, final int[] dst) {
+        Objects.requireNonNull(format, "Format cannot be null");
+        Objects.requireNonNull(matrix, "Matrix cannot be null");
+        if (dst.length < w * h)
+            throw new IllegalArgumentException("Destination too small (" + dst.length + " < " + (w * h) + " pixels)");
+
+        if (parallel(w, h)) {
+            forBands(h, 1 << format.shiftY, (from, to) -> yuvRows(format, matrix, yP, uP, vP, w, yS, uvS, from, to, dst));
+        } else {
+            yuvRows(format, matrix, yP, uP, vP, w, yS, uvS, 0, h, dst);
+        }
+        return dst;
+    }
+
+    /**
+     * Converts a YUV frame into a caller-owned buffer as little-endian BGRA bytes, allocating no pixel
+     * storage. Writes {@code w * h * 4} bytes starting at the buffer position, regardless of the buffer
+     * byte order, and leaves position and limit untouched.
+     *
+     * @param dst destination buffer with at least {@code w * h * 4} bytes remaining
+     * @return {@code dst}
+     * @see #yuvToBgra(YuvFormat, YuvMatrix, byte[], byte[], byte[], int, int, int, int, int[])
+     */
+    public static ByteBuffer yuvToBgra(final YuvFormat format, final YuvMatrix matrix, final byte[] yP, final byte[] uP, final byte[] vP,
+                                       final int w, final int h, final int yS, final int uvS, final ByteBuffer dst) {
+        Objects.requireNonNull(format, "Format cannot be null");
+        Objects.requireNonNull(matrix, "Matrix cannot be null");
+        if (dst.remaining() < w * h * 4)
+            throw new IllegalArgumentException("Destination too small (" + dst.remaining() + " < " + (w * h * 4) + " bytes)");
+
+        final IntBuffer out = dst.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        if (parallel(w, h)) {
+            forBands(h, 1 << format.shiftY, (from, to) -> yuvRows(format, matrix, yP, uP, vP, w, yS, uvS, from, to, out));
+        } else {
+            yuvRows(format, matrix, yP, uP, vP, w, yS, uvS, 0, h, out);
+        }
+        return dst;
+    }
+
+    // CONVERTS ROWS [from, to) INTO THE int[] CANVAS
+    private static void yuvRows(final YuvFormat format, final YuvMatrix matrix, final byte[] yP, final byte[] uP, final byte[] vP,
+                                final int w, final int yS, final int uvS, final int from, final int to, final int[] dst) {
+        for (int py = from; py < to; py++) {
+            yuvRow(format, matrix, yP, uP, vP, py * yS, (py >> format.shiftY) * uvS, w, dst, py * w);
+        }
+    }
+
+    // CONVERTS ROWS [from, to) INTO THE INT VIEW OF A BYTEBUFFER. EACH ROW IS CONVERTED INTO AN ON-HEAP
+    // SCRATCH ROW FIRST (TIGHT HOT LOOP WITH ARRAY BOUNDS-CHECK ELIMINATION), THEN BULK COPIED INTO THE
+    // BUFFER; THIS AVOIDS ~w*h BUFFER putInt CALLS, EACH OF WHICH WOULD BE A SEPARATE BOUNDS-CHECKED ACCESS.
+    private static void yuvRows(final YuvFormat format, final YuvMatrix matrix, final byte[] yP, final byte[] uP, final byte[] vP,
+                                final int w, final int yS, final int uvS, final int from, final int to, final IntBuffer dst) {
+        final int[] row = scratchRow(w);
+        for (int py = from; py < to; py++) {
+            yuvRow(format, matrix, yP, uP, vP, py * yS, (py >> format.shiftY) * uvS, w, row, 0);
+            dst.put(py * w, row, 0, w);
+        }
+    }
+
+    private static void yuvRow(final YuvFormat format, final YuvMatrix matrix, final byte[] yP, final byte[] uP, final byte[] vP,
+                               final int yRow, final int uvRow, final int w, final int[] dst, final int dstRow) {
+        final int yOff = matrix.yOffset, yMul = matrix.yMul, rv = matrix.rv, gu = matrix.gu, gv = matrix.gv, bu = matrix.bu;
+        if (format.interleaved) {
+            // SEMI-PLANAR: ONE [U,V] (NV12) OR [V,U] (NV21) PAIR PER TWO LUMA SAMPLES
+            final int uo = format == YuvFormat.NV21 ? 1 : 0, vo = 1 - uo;
             for (int px = 0; px < w; px++) {
-                final int y = yP[py * yS + px] & 0xFF;
-                final int i = (py >> 1) * uvS + (px >> 1);
-                final int u = uP[i] & 0xFF;
-                final int v = vP[i] & 0xFF;
-                final int c = y - 16, d = u - 128, e = v - 128;
-                int r = (298 * c + 409 * e + 128) >> 8;
-                int g = (298 * c - 100 * d - 208 * e + 128) >> 8;
-                int b = (298 * c + 516 * d + 128) >> 8;
+                final int i = uvRow + ((px >> 1) << 1);
+                dst[dstRow + px] = yuvPixel(yP[yRow + px] & 0xFF, uP[i + uo] & 0xFF, uP[i + vo] & 0xFF, yOff, yMul, rv, gu, gv, bu);
+            }
+        } else {
+            final int shiftX = format.shiftX;
+            for (int px = 0; px < w; px++) {
+                final int i = uvRow + (px >> shiftX);
+                dst[dstRow + px] = yuvPixel(yP[yRow + px] & 0xFF, uP[i] & 0xFF, vP[i] & 0xFF, yOff, yMul, rv, gu, gv, bu);
+            }
+        }
+    }
+
+    // 8-BIT FIXED POINT; PACKS AS (A<<24 | R<<16 | G<<8 | B)
+    private static int yuvPixel(final int y, final int u, final int v, final int yOff, final int yMul, final int rv, final int gu, final int gv, final int bu) {
+        final int c = (y - yOff) * yMul, d = u - 128, e = v - 128;
+        int r = (c + rv * e + 128) >> 8;
+        int g = (c - gu * d - gv * e + 128) >> 8;
+        int b = (c + bu * d + 128) >> 8;
+
+        if (r < 0) r = 0; else if (r > 255) r = 255;
+        if (g < 0) g = 0; else if (g > 255) g = 255;
+        if (b < 0) b = 0; else if (b > 255) b = 255;
+
+        return (0xFF << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Converts a YUV frame straight into a {@code dw x dh} BGRA canvas with bilinear filtering, converting only
+     * the source pixels the output samples, so the full-resolution frame is never produced. Meant for
+     * thumbnails and previews; past 2x reduction bilinear skips source pixels, so expect some aliasing.
+     *
+     * @param dst destination canvas, at least {@code dw * dh} long
+     * @return {@code dst}
+     * @see #yuvToBgra(YuvFormat, YuvMatrix, byte[], byte[], byte[], int, int, int, int, int[])
+     */
+    public static int[] yuvToBgra(final YuvFormat format, final YuvMatrix matrix, final byte[] yP, final byte[] uP, final byte[] vP,
+                                  final int w, final int h, final int yS, final int uvS, final int[] dst, final int dw, final int dh) {
+        Objects.requireNonNull(format, "Format cannot be null");
+        Objects.requireNonNull(matrix, "Matrix cannot be null");
+        checkScale(w, h, dw, dh, dst.length);
+        scaleRows(w, h, dw, dh, (t, sy, at) -> yuvGather(format, matrix, yP, uP, vP, yS, uvS, sy, t, dw, at),
+                (y, t, at) -> System.arraycopy(t, at, dst, y * dw, dw));
+        return dst;
+    }
 
-                r = Math.min(255, Math.max(0, r));
-                g = Math.min(255, Math.max(0, g));
-                b = Math.min(255, Math.max(0, b));
+    /**
+     * Buffer version of {@link #yuvToBgra(YuvFormat, YuvMatrix, byte[], byte[], byte[], int, int, int, int, int[], int, int)}:
+     * writes {@code dw * dh} little-endian BGRA pixels at the position of {@code dst}, leaving position and limit untouched.
+     *
+     * @return {@code dst}
+     */
+    public static ByteBuffer yuvToBgra(final YuvFormat format, final YuvMatrix matrix, final byte[] yP, final byte[] uP, final byte[] vP,
+                                       final int w, final int h, final int yS, final int uvS, final ByteBuffer dst, final int dw, final int dh) {
+        Objects.requireNonNull(format, "Format cannot be null");
+        Objects.requireNonNull(matrix, "Matrix cannot be null");
+        checkScale(w, h, dw, dh, dst.remaining() >> 2);
+        final IntBuffer out = ints(dst);
+        scaleRows(w, h, dw, dh, (t, sy, at) -> yuvGather(format, matrix, yP, uP, vP, yS, uvS, sy, t, dw, at),
+                (y, t, at) -> out.put(y * dw, t, at, dw));
+        return dst;
+    }
 
-                bgra[py * w + px] = (255 << 24) | (r << 16) | (g << 8) | b;
+    /**
+     * Halves a frame with a 2x2 box filter, the step of a mip chain. The result is {@code max(1, w / 2)} by
+     * {@code max(1, h / 2)}; an odd last row or column is dropped. Channel order does not matter.
+     *
+     * @param dst destination, at least {@code max(1, w / 2) * max(1, h / 2)} long; not {@code src}
+     * @return {@code dst}
+     */
+    public static int[] downscale2x(final int[] src, final int w, final int h, final int[] dst) {
+        final int hw = Math.max(1, w >> 1), hh = Math.max(1, h >> 1);
+        checkPixels(w * h, src.length);
+        checkPixels(hw * hh, dst.length);
+        eachRow(hw, hh, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                box2x(src, (y << 1) * w, Math.min((y << 1) + 1, h - 1) * w, w, dst, y * hw, hw);
             }
-        return bgra;
+        });
+        return dst;
     }
 
-    // CONVERTS YUV DIRECTLY TO BGRA BYTEBUFFER
-    public static ByteBuffer yuvToBgraBuf(final byte[] yP, final byte[] uP, final byte[] vP, final int w, final int h, final int yS, final int uvS) {
-        // CONVERT INTO AN ON-HEAP int[] FIRST (TIGHT ALLOCATION-FREE HOT LOOP WITH ARRAY
-        // BOUNDS-CHECK ELIMINATION), THEN DO A SINGLE BULK COPY INTO THE DIRECT BUFFER.
-        // THIS AVOIDS ~w*h DIRECT-BUFFER put/putInt CALLS, EACH OF WHICH WOULD BE A SEPARATE
-        // ACCESS WITH ITS OWN BOUNDS CHECK.
-        final int[] packed = new int[w * h];
-        for (int py = 0; py < h; py++) {
-            final int yRow = py * yS;
-            final int uvRow = (py >> 1) * uvS;
-            final int dstRow = py * w;
-            for (int px = 0; px < w; px++) {
-                final int y = yP[yRow + px] & 0xFF;
-                final int i = uvRow + (px >> 1);
-                final int u = uP[i] & 0xFF;
-                final int v = vP[i] & 0xFF;
-                final int c = y - 16, d = u - 128, e = v - 128;
-                int r = (298 * c + 409 * e + 128) >> 8;
-                int g = (298 * c - 100 * d - 208 * e + 128) >> 8;
-                int b = (298 * c + 516 * d + 128) >> 8;
+    /**
+     * Buffer version of {@link #downscale2x(int[], int, int, int[])}, reading and writing at the buffer
+     * positions, which are left untouched along with the limits.
+     *
+     * @return {@code dst}
+     */
+    public static ByteBuffer downscale2x(final ByteBuffer src, final int w, final int h, final ByteBuffer dst) {
+        final int hw = Math.max(1, w >> 1), hh = Math.max(1, h >> 1);
+        checkPixels(w * h, src.remaining() >> 2);
+        checkPixels(hw * hh, dst.remaining() >> 2);
+        final IntBuffer in = ints(src), out = ints(dst);
+        eachRow(hw, hh, (from, to) -> {
+            final int[] scratch = scratchRow(2 * w + hw); // TWO SOURCE ROWS AND ONE OUTPUT ROW
+            for (int y = from; y < to; y++) {
+                in.get((y << 1) * w, scratch, 0, w);
+                in.get(Math.min((y << 1) + 1, h - 1) * w, scratch, w, w);
+                box2x(scratch, 0, w, w, scratch, 2 * w, hw);
+                out.put(y * hw, scratch, 2 * w, hw);
+            }
+        });
+        return dst;
+    }
+
+    /**
+     * @return pixels needed to hold levels 1 to {@code levels} of the mip chain of a {@code w x h} frame
+     * (stopping early at 1x1), as written by {@link #mipChain(int[], int, int, int, int[])}
+     */
+    public static int mipChainLength(int w, int h, final int levels) {
+        int total = 0;
+        for (int i = 0; i < levels && (w > 1 || h > 1); i++) {
+            w = Math.max(1, w >> 1);
+            h = Math.max(1, h >> 1);
+            total += w * h;
+        }
+        return total;
+    }
+
+    /**
+     * Builds levels 1 to {@code levels} of the mip chain of {@code base} with {@link #downscale2x(int[], int, int, int[])},
+     * each level computed from the previous one and stored right after it in {@code dst}.
+     *
+     * @param dst destination, at least {@link #mipChainLength(int, int, int)} long
+     * @return the number of levels written, less than {@code levels} when 1x1 was reached first
+     */
+    public static int mipChain(final int[] base, int w, int h, final int levels, final int[] dst) {
+        checkPixels(mipChainLength(w, h, levels), dst.length);
+        int[] level = base;
+        int offset = 0, previous = 0, count = 0;
+        for (; count < levels && (w > 1 || h > 1); count++) {
+            final int[] src = level;
+            final int sw = w, sh = h, from = previous, at = offset;
+            final int hw = Math.max(1, sw >> 1);
+            eachRow(hw, Math.max(1, sh >> 1), (start, end) -> {
+                for (int y = start; y < end; y++) {
+                    box2x(src, from + (y << 1) * sw, from + Math.min((y << 1) + 1, sh - 1) * sw, sw, dst, at + y * hw, hw);
+                }
+            });
+            w = hw;
+            h = Math.max(1, sh >> 1);
+            level = dst;
+            previous = offset;
+            offset += w * h;
+        }
+        return count;
+    }
+
+    /**
+     * Buffer version of {@link #mipChain(int[], int, int, int, int[])}: levels are written one after another
+     * from the position of {@code dst}.
+     *
+     * @return the number of levels written
+     */
+    public static int mipChain(final ByteBuffer base, int w, int h, final int levels, final ByteBuffer dst) {
+        checkPixels(mipChainLength(w, h, levels), dst.remaining() >> 2);
+        ByteBuffer level = base;
+        int offset = 0, count = 0;
+        for (; count < levels && (w > 1 || h > 1); count++) {
+            final ByteBuffer next = dst.duplicate().position(dst.position() + (offset << 2));
+            downscale2x(level, w, h, next);
+            w = Math.max(1, w >> 1);
+            h = Math.max(1, h >> 1);
+            level = next;
+            offset += w * h;
+        }
+        return count;
+    }
+
+    /**
+     * Resizes a frame to {@code dw x dh} with bilinear filtering (pixel centers aligned, edges clamped).
+     * Channel order does not matter. For reductions past 2x, halve with {@link #downscale2x} first to avoid aliasing.
+     *
+     * @param dst destination, at least {@code dw * dh} long; not {@code src}
+     * @return {@code dst}
+     */
+    public static int[] scale(final int[] src, final int w, final int h, final int[] dst, final int dw, final int dh) {
+        checkPixels(w * h, src.length);
+        checkScale(w, h, dw, dh, dst.length);
+        scaleRows(w, h, dw, dh, (t, sy, at) -> {
+            final int base = sy * w;
+            for (int x = 0; x < dw; x++) {
+                t[at + (x << 1)] = src[base + t[x]];
+                t[at + (x << 1) + 1] = src[base + t[dw + x]];
+            }
+        }, (y, t, at) -> System.arraycopy(t, at, dst, y * dw, dw));
+        return dst;
+    }
+
+    /**
+     * Buffer version of {@link #scale(int[], int, int, int[], int, int)}, reading and writing at the buffer
+     * positions, which are left untouched along with the limits.
+     *
+     * @return {@code dst}
+     */
+    public static ByteBuffer scale(final ByteBuffer src, final int w, final int h, final ByteBuffer dst, final int dw, final int dh) {
+        checkPixels(w * h, src.remaining() >> 2);
+        checkScale(w, h, dw, dh, dst.remaining() >> 2);
+        final IntBuffer in = ints(src), out = ints(dst);
+        scaleRows(w, h, dw, dh, (t, sy, at) -> {
+            final int base = sy * w;
+            for (int x = 0; x < dw; x++) {
+                t[at + (x << 1)] = in.get(base + t[x]);
+                t[at + (x << 1) + 1] = in.get(base + t[dw + x]);
+            }
+        }, (y, t, at) -> out.put(y * dw, t, at, dw));
+        return dst;
+    }
+
+    // AVERAGES 2x2 BLOCKS OF TWO SOURCE ROWS INTO hw PIXELS, TWO CHANNELS PER OPERATION
+    private static void box2x(final int[] src, final int row0, final int row1, final int w, final int[] dst, final int at, final int hw) {
+        for (int x = 0; x < hw; x++) {
+            final int i = x << 1, j = Math.min(i + 1, w - 1);
+            final int a = src[row0 + i], b = src[row0 + j], c = src[row1 + i], d = src[row1 + j];
+            final int lo = ((a & 0x00FF00FF) + (b & 0x00FF00FF) + (c & 0x00FF00FF) + (d & 0x00FF00FF) + 0x00020002) >>> 2 & 0x00FF00FF;
+            final int hi = (((a >>> 8) & 0x00FF00FF) + ((b >>> 8) & 0x00FF00FF) + ((c >>> 8) & 0x00FF00FF) + ((d >>> 8) & 0x00FF00FF) + 0x00020002) >>> 2 & 0x00FF00FF;
+            dst[at + x] = lo | hi << 8;
+        }
+    }
 
-                if (r < 0) r = 0; else if (r > 255) r = 255;
-                if (g < 0) g = 0; else if (g > 255) g = 255;
-                if (b < 0) b = 0; else if (b > 255) b = 255;
+    // SCRATCH LAYOUT OF THE BILINEAR PATH, IN UNITS OF dw: x0 | x1 | fx | TAPS OF ROW y0 (2) | TAPS OF ROW y1 (2) | OUTPUT ROW
+    private static final int SCALE_X1 = 1, SCALE_FX = 2, SCALE_ROW0 = 3, SCALE_ROW1 = 5, SCALE_OUT = 7, SCALE_SCRATCH = 8;
 
-                // PACK AS LITTLE-ENDIAN INT: WHEN COPIED INTO LE DIRECT BUFFER THIS LANDS AS
-                // B, G, R, A IN MEMORY, MATCHING THE WEBP READER'S EXPECTED LAYOUT.
-                packed[dstRow + px] = (0xFF << 24) | (r << 16) | (g << 8) | b;
+    // WRITES THE TWO HORIZONTAL TAPS OF SOURCE ROW sy FOR OUTPUT PIXEL x TO t[at + 2x] AND t[at + 2x + 1],
+    // TAKING THEIR COLUMNS FROM t[x] AND t[dw + x]
+    private interface Gather {
+        void gather(int[] t, int sy, int at);
+    }
+
+    private interface RowSink {
+        void write(int y, int[] t, int at);
+    }
+
+    // BILINEAR DRIVER WITH PIXEL CENTERS ALIGNED: 16.16 SOURCE COORDINATES, 8-BIT WEIGHTS, TWO CHANNELS PER
+    // OPERATION. THE PER-THREAD SCRATCH HOLDS EVERYTHING, SO NOTHING IS ALLOCATED PER FRAME
+    private static void scaleRows(final int w, final int h, final int dw, final int dh, final Gather gather, final RowSink sink) {
+        eachRow(dw, dh, (from, to) -> {
+            final int[] t = scratchRow(SCALE_SCRATCH * dw);
+            for (int x = 0; x < dw; x++) {
+                final long sx = sourceCoordinate(x, w, dw);
+                t[x] = (int) (sx >> 16);
+                t[SCALE_X1 * dw + x] = Math.min(t[x] + 1, w - 1);
+                t[SCALE_FX * dw + x] = (int) (sx >> 8) & 0xFF;
+            }
+            for (int y = from; y < to; y++) {
+                final long sy = sourceCoordinate(y, h, dh);
+                final int y0 = (int) (sy >> 16), fy = (int) (sy >> 8) & 0xFF;
+                gather.gather(t, y0, SCALE_ROW0 * dw);
+                if (fy != 0) gather.gather(t, Math.min(y0 + 1, h - 1), SCALE_ROW1 * dw);
+                for (int x = 0; x < dw; x++) {
+                    final int fx = t[SCALE_FX * dw + x];
+                    final int a = t[SCALE_ROW0 * dw + (x << 1)], b = t[SCALE_ROW0 * dw + (x << 1) + 1];
+                    final int top = fx == 0 ? a : lerp(a, b, fx);
+                    if (fy == 0) {
+                        t[SCALE_OUT * dw + x] = top;
+                    } else {
+                        final int c = t[SCALE_ROW1 * dw + (x << 1)], d = t[SCALE_ROW1 * dw + (x << 1) + 1];
+                        t[SCALE_OUT * dw + x] = lerp(top, fx == 0 ? c : lerp(c, d, fx), fy);
+                    }
+                }
+                sink.write(y, t, SCALE_OUT * dw);
             }
+        });
+    }
+
+    // 16.16 SOURCE POSITION OF THE CENTER OF OUTPUT PIXEL i, CLAMPED TO THE FIRST PIXEL
+    private static long sourceCoordinate(final int i, final int size, final int scaled) {
+        return Math.max(0, (((2L * i + 1) * size) << 15) / scaled - (1 << 15));
+    }
+
+    // a + (b - a) * f / 256 PER CHANNEL
+    private static int lerp(final int a, final int b, final int f) {
+        final int g = 256 - f;
+        final int lo = ((a & 0x00FF00FF) * g + (b & 0x00FF00FF) * f + 0x00800080) >>> 8 & 0x00FF00FF;
+        final int hi = (((a >>> 8) & 0x00FF00FF) * g + ((b >>> 8) & 0x00FF00FF) * f + 0x00800080) >>> 8 & 0x00FF00FF;
+        return lo | hi << 8;
+    }
+
+    // GATHERS THE TAPS OF ONE SOURCE ROW OF A YUV FRAME, CONVERTING ONLY THE SAMPLED PIXELS
+    private static void yuvGather(final YuvFormat format, final YuvMatrix matrix, final byte[] yP, final byte[] uP, final byte[] vP,
+                                  final int yS, final int uvS, final int sy, final int[] t, final int dw, final int at) {
+        final int yRow = sy * yS, uvRow = (sy >> format.shiftY) * uvS;
+        for (int x = 0; x < dw; x++) {
+            t[at + (x << 1)] = yuvAt(format, matrix, yP, uP, vP, yRow, uvRow, t[x]);
+            t[at + (x << 1) + 1] = yuvAt(format, matrix, yP, uP, vP, yRow, uvRow, t[SCALE_X1 * dw + x]);
         }
-        final ByteBuffer bgra = ByteBuffer.allocateDirect(w * h * 4).order(ByteOrder.LITTLE_ENDIAN);
-        bgra.asIntBuffer().put(packed);
-        return bgra;
     }
 
-    // THIS IS THE MOST EFFICIENT WAY TO CONVERT INT[] CANVAS TO BYTEBUFFER
+    private static int yuvAt(final YuvFormat format, final YuvMatrix matrix, final byte[] yP, final byte[] uP, final byte[] vP,
+                             final int yRow, final int uvRow, final int px) {
+        final int u, v;
+        if (format.interleaved) {
+            final int i = uvRow + ((px >> 1) << 1), uo = format == YuvFormat.NV21 ? 1 : 0;
+            u = uP[i + uo] & 0xFF;
+            v = uP[i + 1 - uo] & 0xFF;
+        } else {
+            final int i = uvRow + (px >> format.shiftX);
+            u = uP[i] & 0xFF;
+            v = vP[i] & 0xFF;
+        }
+        return yuvPixel(yP[yRow + px] & 0xFF, u, v, matrix.yOffset, matrix.yMul, matrix.rv, matrix.gu, matrix.gv, matrix.bu);
+    }
+
+    private static void checkScale(final int w, final int h, final int dw, final int dh, final int dst) {
+        if (w < 1 || h < 1 || dw < 1 || dh < 1) throw new IllegalArgumentException("Dimensions must be positive");
+        checkPixels(dw * dh, dst);
+    }
+
+    // RUNS action OVER OUTPUT ROWS, IN PARALLEL BANDS WHEN THE OUTPUT IS PAST THE THRESHOLD
+    private static void eachRow(final int w, final int h, final BandAction action) {
+        if (parallel(w, h)) {
+            forBands(h, 1, action);
+        } else {
+            action.run(0, h);
+        }
+    }
+
+    /**
+     * Sets the frame size, in pixels, from which whole-frame conversions split the work into row bands
+     * running on the {@link #parallelPool(ForkJoinPool) parallel pool}. Parallel output is byte for byte
+     * identical to the serial path.
+     *
+     * @param pixels minimum {@code w * h} to go parallel; {@link Integer#MAX_VALUE} disables it
+     */
+    public static void parallelThreshold(final int pixels) {
+        if (pixels < 1) throw new IllegalArgumentException("Threshold must be positive");
+        parallelThreshold = pixels;
+    }
+
+    public static int parallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the pool used for parallel conversions, {@link ForkJoinPool#commonPool()} by default.
+     */
+    public static void parallelPool(final ForkJoinPool pool) {
+        parallelPool = Objects.requireNonNull(pool, "Pool cannot be null");
+    }
+
+    private static boolean parallel(final int w, final int h) {
+        return (long) w * h >= parallelThreshold && parallelPool.getParallelism() > 1;
+    }
+
+    // SPLITS [0, rows) INTO BANDS WHOSE BOUNDARIES ARE MULTIPLES OF align (E.G. CHROMA ROWS, SO TWO BANDS
+    // NEVER SHARE A SUBSAMPLED ROW) AND RUNS THEM ON THE PARALLEL POOL, RETURNING ONCE ALL ARE DONE
+    private static void forBands(final int rows, final int align, final BandAction action) {
+        final ForkJoinPool pool = parallelPool;
+        final int bands = pool.getParallelism() * 4; // OVERSPLIT A LITTLE SO UNEVEN BANDS GET STOLEN
+        int band = (rows + bands - 1) / bands;
+        band = Math.max(align, (band + align - 1) / align * align);
+        pool.invoke(new BandTask(action, 0, rows, band));
+    }
+
+    private interface BandAction {
+        void run(int from, int to);
+    }
+
+    private static final class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final BandAction action;
+        private final int from, to, band;
+
+        private BandTask(final BandAction action, final int from, final int to, final int band) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+            this.band = band;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= this.band) {
+                this.action.run(this.from, this.to);
+                return;
+            }
+            // SPLIT ON A BAND BOUNDARY SO EVERY LEAF STARTS ALIGNED
+            final int bandsInRange = (this.to - this.from + this.band - 1) / this.band;
+            final int mid = this.from + (bandsInRange / 2) * this.band;
+            invokeAll(new BandTask(this.action, this.from, mid, this.band), new BandTask(this.action, mid, this.to, this.band));
+        }
+    }
+
+    // PER-THREAD SCRATCH ROW, GROWN ON DEMAND SO STEADY-STATE CONVERSION ALLOCATES NOTHING
+    private static final ThreadLocal<int[]> SCRATCH_ROW = ThreadLocal.withInitial(() -> new int[0]);
+    private static int[] scratchRow(final int w) {
+        int[] row = SCRATCH_ROW.get();
+        if (row.length < w) {
+            row = new int[w];
+            SCRATCH_ROW.set(row);
+        }
+        return row;
+    }
+
+    /**
+     * Copies an {@code int[]} canvas into a new little-endian BGRA buffer. The caller owns it: hand it to
+     * {@link MemTool#free(ByteBuffer)} once done, or it counts against the {@link MemTool#budget(long) off-heap
+     * budget} until collected. Prefer {@link #bgraToBuffer(int[], ByteBuffer)} with a pooled buffer per frame.
+     *
+     * @throws MemTool.BudgetExceededException if the canvas does not fit in the budget
+     */
     public static ByteBuffer bgraToBuffer(final int[] bgra) {
-        final ByteBuffer buffer = ByteBuffer.allocateDirect(bgra.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer buffer = MemTool.allocate(MEM_TAG, bgra.length * 4).order(ByteOrder.LITTLE_ENDIAN);
         buffer.asIntBuffer().put(bgra);
         return buffer;
     }
 
+    // SAME AS ABOVE BUT INTO A CALLER-OWNED BUFFER (E.G. FROM BufferTool.acquire), WRITTEN AT ITS POSITION
+    // AS LITTLE-ENDIAN; POSITION AND LIMIT ARE LEFT UNTOUCHED
+    public static ByteBuffer bgraToBuffer(final int[] bgra, final ByteBuffer dst) {
+        if (dst.remaining() < bgra.length * 4)
+            throw new IllegalArgumentException("Destination too small (" + dst.remaining() + " < " + (bgra.length * 4) + " bytes)");
+        dst.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(bgra);
+        return dst;
+    }
+
+    /**
+     * Reorders the channels of every pixel from {@code from} to {@code to}, two pixels per 64-bit word.
+     * {@code dst} may be {@code src} to convert in place.
+     *
+     * @param dst destination, at least {@code src.length} long
+     * @return {@code dst}
+     */
+    public static int[] swizzle(final int[] src, final PixelLayout from, final int[] dst, final PixelLayout to) {
+        final int op = swizzleOp(from, to);
+        checkPixels(src.length, dst.length);
+        if (op == SWIZZLE_NONE) {
+            if (src != dst) System.arraycopy(src, 0, dst, 0, src.length);
+            return dst;
+        }
+        eachPixel(src.length, (start, end) -> {
+            switch (op) {
+                case SWIZZLE_SWAP_RB -> { for (int i = start; i < end; i++) dst[i] = swapRb(src[i]); }
+                case SWIZZLE_REVERSE -> { for (int i = start; i < end; i++) dst[i] = Integer.reverseBytes(src[i]); }
+                case SWIZZLE_ROTATE_LEFT -> { for (int i = start; i < end; i++) dst[i] = Integer.rotateLeft(src[i], 8); }
+                default -> { for (int i = start; i < end; i++) dst[i] = Integer.rotateRight(src[i], 8); }
+            }
+        });
+        return dst;
+    }
+
+    /**
+     * Reorders the channels of every pixel remaining in {@code src} from {@code from} to {@code to}, writing
+     * them at the position of {@code dst}; positions and limits are untouched. {@code dst} may be {@code src}
+     * to convert in place.
+     *
+     * @return {@code dst}
+     */
+    public static ByteBuffer swizzle(final ByteBuffer src, final PixelLayout from, final ByteBuffer dst, final PixelLayout to) {
+        final int op = swizzleOp(from, to);
+        final int count = src.remaining() >> 2;
+        checkPixels(count, dst.remaining() >> 2);
+        if (op == SWIZZLE_NONE) {
+            if (src != dst) dst.duplicate().put(src.duplicate().limit(src.position() + (count << 2)));
+            return dst;
+        }
+        final LongBuffer in = longs(src), out = longs(dst);
+        final IntBuffer inTail = ints(src), outTail = ints(dst);
+        eachPixel(count, (start, end) -> {
+            final int words = end >> 1;
+            switch (op) {
+                case SWIZZLE_SWAP_RB -> { for (int i = start >> 1; i < words; i++) out.put(i, swapRb(in.get(i))); }
+                case SWIZZLE_REVERSE -> { for (int i = start >> 1; i < words; i++) out.put(i, Long.rotateLeft(Long.reverseBytes(in.get(i)), 32)); }
+                case SWIZZLE_ROTATE_LEFT -> { for (int i = start >> 1; i < words; i++) out.put(i, rotateLanesLeft(in.get(i))); }
+                default -> { for (int i = start >> 1; i < words; i++) out.put(i, rotateLanesRight(in.get(i))); }
+            }
+            if ((end & 1) != 0) { // ODD LAST PIXEL
+                final int v = inTail.get(end - 1);
+                outTail.put(end - 1, switch (op) {
+                    case SWIZZLE_SWAP_RB -> swapRb(v);
+                    case SWIZZLE_REVERSE -> Integer.reverseBytes(v);
+                    case SWIZZLE_ROTATE_LEFT -> Integer.rotateLeft(v, 8);
+                    default -> Integer.rotateRight(v, 8);
+                });
+            }
+        });
+        return dst;
+    }
+
+    /**
+     * Multiplies the color channels of every pixel by its alpha (rounded, exact to the 8-bit result).
+     * {@code dst} may be {@code src} to convert in place.
+     *
+     * @return {@code dst}
+     */
+    public static int[] premultiply(final int[] src, final PixelLayout layout, final int[] dst) {
+        checkPixels(src.length, dst.length);
+        final int rotate = layout.alphaRotation;
+        eachPixel(src.length, (start, end) -> {
+            for (int i = start; i < end; i++) dst[i] = premultiply(src[i], rotate);
+        });
+        return dst;
+    }
+
+    /**
+     * Buffer version of {@link #premultiply(int[], PixelLayout, int[])}, over the pixels remaining in
+     * {@code src}; positions and limits are untouched.
+     *
+     * @return {@code dst}
+     */
+    public static ByteBuffer premultiply(final ByteBuffer src, final PixelLayout layout, final ByteBuffer dst) {
+        final int count = src.remaining() >> 2;
+        checkPixels(count, dst.remaining() >> 2);
+        final int rotate = layout.alphaRotation;
+        final IntBuffer in = ints(src), out = ints(dst);
+        eachPixel(count, (start, end) -> {
+            final int[] row = scratchRow(Math.min(end - start, SCRATCH_PIXELS));
+            for (int i = start; i < end; i += SCRATCH_PIXELS) {
+                final int n = Math.min(end - i, SCRATCH_PIXELS);
+                in.get(i, row, 0, n);
+                for (int j = 0; j < n; j++) row[j] = premultiply(row[j], rotate);
+                out.put(i, row, 0, n);
+            }
+        });
+        return dst;
+    }
+
+    /**
+     * Divides the color channels of every pixel by its alpha, undoing {@link #premultiply(int[], PixelLayout, int[])}
+     * up to its rounding; fully transparent pixels become transparent black. {@code dst} may be {@code src}.
+     *
+     * @return {@code dst}
+     */
+    public static int[] unpremultiply(final int[] src, final PixelLayout layout, final int[] dst) {
+        checkPixels(src.length, dst.length);
+        final int rotate = layout.alphaRotation;
+        eachPixel(src.length, (start, end) -> {
+            for (int i = start; i < end; i++) dst[i] = unpremultiply(src[i], rotate);
+        });
+        return dst;
+    }
+
+    /**
+     * Buffer version of {@link #unpremultiply(int[], PixelLayout, int[])}, over the pixels remaining in
+     * {@code src}; positions and limits are untouched.
+     *
+     * @return {@code dst}
+     */
+    public static ByteBuffer unpremultiply(final ByteBuffer src, final PixelLayout layout, final ByteBuffer dst) {
+        final int count = src.remaining() >> 2;
+        checkPixels(count, dst.remaining() >> 2);
+        final int rotate = layout.alphaRotation;
+        final IntBuffer in = ints(src), out = ints(dst);
+        eachPixel(count, (start, end) -> {
+            final int[] row = scratchRow(Math.min(end - start, SCRATCH_PIXELS));
+            for (int i = start; i < end; i += SCRATCH_PIXELS) {
+                final int n = Math.min(end - i, SCRATCH_PIXELS);
+                in.get(i, row, 0, n);
+                for (int j = 0; j < n; j++) row[j] = unpremultiply(row[j], rotate);
+                out.put(i, row, 0, n);
+            }
+        });
+        return dst;
+    }
+
+    /**
+     * Sets the alpha of every pixel to {@code alpha} (0-255), e.g. to make a decoder's undefined X channel opaque.
+     *
+     * @return {@code pixels}
+     */
+    public static int[] fillAlpha(final int[] pixels, final PixelLayout layout, final int alpha) {
+        final int keep = ~(0xFF << layout.alphaShift), set = (alpha & 0xFF) << layout.alphaShift;
+        eachPixel(pixels.length, (start, end) -> {
+            for (int i = start; i < end; i++) pixels[i] = pixels[i] & keep | set;
+        });
+        return pixels;
+    }
+
+    /**
+     * Buffer version of {@link #fillAlpha(int[], PixelLayout, int)}, over the pixels remaining in {@code pixels};
+     * position and limit are untouched.
+     *
+     * @return {@code pixels}
+     */
+    public static ByteBuffer fillAlpha(final ByteBuffer pixels, final PixelLayout layout, final int alpha) {
+        final int keep = ~(0xFF << layout.alphaShift), set = (alpha & 0xFF) << layout.alphaShift;
+        final long keep2 = (keep & 0xFFFFFFFFL) * 0x100000001L, set2 = (set & 0xFFFFFFFFL) * 0x100000001L;
+        final LongBuffer words = longs(pixels);
+        final IntBuffer tail = ints(pixels);
+        eachPixel(pixels.remaining() >> 2, (start, end) -> {
+            for (int i = start >> 1, n = end >> 1; i < n; i++) words.put(i, words.get(i) & keep2 | set2);
+            if ((end & 1) != 0) tail.put(end - 1, tail.get(end - 1) & keep | set);
+        });
+        return pixels;
+    }
+
+    // BUFFER PIXELS ARE PROCESSED THROUGH AN ON-HEAP SCRATCH ROW OF THIS MANY, LIKE THE YUV CONVERSION
+    private static final int SCRATCH_PIXELS = 4096;
+
+    private static final int SWIZZLE_NONE = 0, SWIZZLE_SWAP_RB = 1, SWIZZLE_REVERSE = 2, SWIZZLE_ROTATE_LEFT = 3, SWIZZLE_ROTATE_RIGHT = 4;
+
+    // WORD OPERATION TURNING from INTO to, ON LITTLE-ENDIAN INTS
+    private static int swizzleOp(final PixelLayout from, final PixelLayout to) {
+        if (from == to) return SWIZZLE_NONE;
+        if (from != PixelLayout.ARGB && to != PixelLayout.ARGB) return SWIZZLE_SWAP_RB; // BGRA <-> RGBA
+        if (from == PixelLayout.BGRA || to == PixelLayout.BGRA) return SWIZZLE_REVERSE; // BGRA <-> ARGB
+        return from == PixelLayout.RGBA ? SWIZZLE_ROTATE_LEFT : SWIZZLE_ROTATE_RIGHT; // RGBA <-> ARGB
+    }
+
+    private static int swapRb(final int v) {
+        return v & 0xFF00FF00 | (v >>> 16) & 0xFF | (v & 0xFF) << 16;
+    }
+
+    private static long swapRb(final long v) {
+        return v & 0xFF00FF00FF00FF00L | (v >>> 16) & 0x000000FF000000FFL | (v & 0x000000FF000000FFL) << 16;
+    }
+
+    private static long rotateLanesLeft(final long v) {
+        return (v << 8) & 0xFFFFFF00FFFFFF00L | (v >>> 24) & 0x000000FF000000FFL;
+    }
+
+    private static long rotateLanesRight(final long v) {
+        return (v >>> 8) & 0x00FFFFFF00FFFFFFL | (v << 24) & 0xFF000000FF000000L;
+    }
+
+    // ROUND(c * a / 255) FOR TWO CHANNELS AT ONCE (BYTES 0 AND 2) PLUS ONE (BYTE 1), WITH ALPHA ROTATED TO THE TOP
+    private static int premultiply(int v, final int rotate) {
+        v = Integer.rotateRight(v, rotate);
+        final int a = v >>> 24;
+        if (a != 255) {
+            int rb = (v & 0x00FF00FF) * a + 0x00800080;
+            rb = ((rb + ((rb >>> 8) & 0x00FF00FF)) >>> 8) & 0x00FF00FF;
+            int g = ((v >>> 8) & 0xFF) * a + 0x80;
+            g = (g + (g >>> 8)) >>> 8;
+            v = a << 24 | g << 8 | rb;
+        }
+        return Integer.rotateLeft(v, rotate);
+    }
+
+    private static int unpremultiply(int v, final int rotate) {
+        v = Integer.rotateRight(v, rotate);
+        final int a = v >>> 24;
+        if (a == 0) {
+            v = 0;
+        } else if (a != 255) {
+            final int r = UNPREMULTIPLY[a];
+            final int c0 = Math.min(255, ((v & 0xFF) * r + 0x8000) >>> 16);
+            final int c1 = Math.min(255, (((v >>> 8) & 0xFF) * r + 0x8000) >>> 16);
+            final int c2 = Math.min(255, (((v >>> 16) & 0xFF) * r + 0x8000) >>> 16);
+            v = a << 24 | c2 << 16 | c1 << 8 | c0;
+        }
+        return Integer.rotateLeft(v, rotate);
+    }
+
+    // 16.16 FIXED POINT 255 / a, SO UNPREMULTIPLYING IS A MULTIPLY INSTEAD OF A DIVISION PER CHANNEL
+    private static final int[] UNPREMULTIPLY = new int[256];
+    static {
+        for (int a = 1; a < 256; a++) {
+            UNPREMULTIPLY[a] = ((255 << 16) + a / 2) / a;
+        }
+    }
+
+    private static void checkPixels(final int src, final int dst) {
+        if (dst < src) throw new IllegalArgumentException("Destination too small (" + dst + " < " + src + " pixels)");
+    }
+
+    // RUNS action OVER PIXEL RANGES, IN PARALLEL BANDS FOR FRAMES PAST THE THRESHOLD; BANDS START ON EVEN
+    // PIXELS SO NO 64-BIT WORD IS SHARED
+    private static void eachPixel(final int count, final BandAction action) {
+        if (parallel(count, 1)) {
+            forBands(count, 2, action);
+        } else {
+            action.run(0, count);
+        }
+    }
+
+    private static LongBuffer longs(final ByteBuffer buffer) {
+        return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+    }
+
+    private static IntBuffer ints(final ByteBuffer buffer) {
+        return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
     public static int toInt(final String s, final int def) {
         if (s == null) return def;
         try { return Integer.parseInt(s.trim()); }
@@ -218,4 +1038,568 @@ public class DataTool {
         try { return Double.parseDouble(s.trim()); }
         catch (final NumberFormatException e) { return def; }
     }
+
+    /**
+     * Creates a {@link Cursor} over the remaining bytes of {@code buffer}; the buffer itself is not moved.
+     */
+    public static Cursor cursor(final ByteBuffer buffer) {
+        return new Cursor(buffer.slice(), null);
+    }
+
+    /**
+     * Creates a {@link Cursor} over a read-only mapping of {@code file}, which must be under 2 GB. The mapping
+     * is released by the GC once the cursor and every view taken from it are unreachable, so views stay valid
+     * after {@link Cursor#close()}; see {@link Cursor#unmap()} to release it eagerly.
+     */
+    public static Cursor cursor(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("File too large to map in one cursor (" + size + " bytes): " + file);
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new Cursor(mapped, mapped);
+        }
+    }
+
+    /**
+     * @return the big-endian int of a four character code ({@code "RIFF"}, {@code "moov"}, ...), as read by
+     * {@link Cursor#u32()}, so box and chunk types can be compared without building strings
+     */
+    public static int fourcc(final String code) {
+        if (code.length() != 4) throw new IllegalArgumentException("Four character code expected: " + code);
+        return (code.charAt(0) & 0xFF) << 24 | (code.charAt(1) & 0xFF) << 16 | (code.charAt(2) & 0xFF) << 8 | (code.charAt(3) & 0xFF);
+    }
+
+    /**
+     * Byte order of a 32-bit pixel in memory. {@code int[]} pixels are the same bytes read as little-endian ints,
+     * so {@link #BGRA} is the {@code A<<24 | R<<16 | G<<8 | B} packing used by the YUV conversions.
+     */
+    public enum PixelLayout {
+        BGRA(24),
+        RGBA(24),
+        ARGB(0);
+
+        final int alphaShift; // BIT OFFSET OF ALPHA IN THE LITTLE-ENDIAN INT
+        final int alphaRotation; // RIGHT ROTATION MOVING ALPHA TO THE TOP BYTE
+
+        PixelLayout(final int alphaShift) {
+            this.alphaShift = alphaShift;
+            this.alphaRotation = (alphaShift + 8) & 31;
+        }
+    }
+
+    /**
+     * YUV sample layouts understood by the conversion engine.
+     */
+    public enum YuvFormat {
+        /** Planar 4:2:0; separate U and V planes subsampled on both axes. */
+        I420(1, 1, false),
+        /** Planar 4:2:2; separate U and V planes subsampled horizontally. */
+        I422(1, 0, false),
+        /** Planar 4:4:4; full resolution U and V planes. */
+        I444(0, 0, false),
+        /** Semi-planar 4:2:0; one interleaved plane of U,V pairs. */
+        NV12(1, 1, true),
+        /** Semi-planar 4:2:0; one interleaved plane of V,U pairs. */
+        NV21(1, 1, true);
+
+        final int shiftX;
+        final int shiftY;
+        final boolean interleaved;
+
+        YuvFormat(final int shiftX, final int shiftY, final boolean interleaved) {
+            this.shiftX = shiftX;
+            this.shiftY = shiftY;
+            this.interleaved = interleaved;
+        }
+    }
+
+    /**
+     * YUV to RGB matrices with their quantization range. Limited ("TV") range maps luma to 16-235 and chroma
+     * to 16-240; full ("PC") range uses the whole 0-255 span.
+     */
+    public enum YuvMatrix {
+        BT601_LIMITED(0.299, 0.114, false),
+        BT601_FULL(0.299, 0.114, true),
+        BT709_LIMITED(0.2126, 0.0722, false),
+        BT709_FULL(0.2126, 0.0722, true),
+        BT2020_LIMITED(0.2627, 0.0593, false),
+        BT2020_FULL(0.2627, 0.0593, true);
+
+        // 8-BIT FIXED POINT; BT601_LIMITED RESOLVES TO THE CLASSIC 298/409/100/208/516 INTEGER MATRIX
+        final int yOffset, yMul, rv, gu, gv, bu;
+
+        YuvMatrix(final double kr, final double kb, final boolean full) {
+            final double kg = 1 - kr - kb;
+            final double yScale = full ? 1 : 255d / 219d;
+            final double cScale = full ? 1 : 255d / 224d;
+            this.yOffset = full ? 0 : 16;
+            this.yMul = (int) Math.round(yScale * 256);
+            this.rv = (int) Math.round(cScale * 2 * (1 - kr) * 256);
+            this.gu = (int) Math.round(cScale * 2 * (1 - kb) * kb / kg * 256);
+            this.gv = (int) Math.round(cScale * 2 * (1 - kr) * kr / kg * 256);
+            this.bu = (int) Math.round(cScale * 2 * (1 - kb) * 256);
+        }
+    }
+
+    /**
+     * Forward-only reader for container formats (RIFF, EBML, ISO-BMFF, ...) over a {@link ByteBuffer} or a
+     * mapped file. Fixed-width reads load up to 8 bytes at once; nothing is allocated per field and child
+     * boxes are bounded with {@link #enter(int)}/{@link #exit()} instead of copies. Reading past the current
+     * bound throws {@link BufferUnderflowException}.
+     * <p>
+     * Bit reads ({@link #bits(int)}, {@link #bitsLsb(int)}) continue within the current byte; any byte-level
+     * read first skips the rest of a partially read byte.
+     */
+    public static final class Cursor implements AutoCloseable {
+        private final ByteBuffer buffer;
+        private final MappedByteBuffer mapped;
+        private int position;
+        private int limit;
+        private int bit; // BITS ALREADY CONSUMED FROM THE BYTE AT position
+        private int[] limits = new int[16];
+        private int depth;
+
+        private Cursor(final ByteBuffer buffer, final MappedByteBuffer mapped) {
+            this.buffer = buffer.order(ByteOrder.BIG_ENDIAN);
+            this.mapped = mapped;
+            this.limit = buffer.limit();
+        }
+
+        public int position() {
+            return this.position;
+        }
+
+        public Cursor position(final int position) {
+            if (position < 0 || position > this.limit) throw new IndexOutOfBoundsException("Position " + position + " outside [0, " + this.limit + "]");
+            this.position = position;
+            this.bit = 0;
+            return this;
+        }
+
+        /**
+         * @return the current bound: the end of the innermost {@link #enter(int) entered} box, or of the data
+         */
+        public int limit() {
+            return this.limit;
+        }
+
+        public int remaining() {
+            return this.limit - this.position - (this.bit == 0 ? 0 : 1);
+        }
+
+        public boolean hasRemaining() {
+            return this.remaining() > 0;
+        }
+
+        public Cursor skip(final int bytes) {
+            this.align();
+            this.need(bytes);
+            this.position += bytes;
+            return this;
+        }
+
+        public int u8() {
+            this.align();
+            this.need(1);
+            return this.buffer.get(this.position++) & 0xFF;
+        }
+
+        public int u16() {
+            return (int) this.be(2);
+        }
+
+        public int u16le() {
+            return (int) this.le(2);
+        }
+
+        public int u24() {
+            return (int) this.be(3);
+        }
+
+        public int u24le() {
+            return (int) this.le(3);
+        }
+
+        /**
+         * @return the next 4 bytes, big-endian; the raw int, so unsigned values above 2^31 come out negative
+         * (use {@link Integer#toUnsignedLong(int)})
+         */
+        public int u32() {
+            return (int) this.be(4);
+        }
+
+        public int u32le() {
+            return (int) this.le(4);
+        }
+
+        public long u64() {
+            return this.be(8);
+        }
+
+        public long u64le() {
+            return this.le(8);
+        }
+
+        /**
+         * @return the next {@code bytes} (1-8) bytes as an unsigned big-endian number
+         */
+        public long be(final int bytes) {
+            this.width(bytes);
+            final long value = getBE(this.buffer, this.position, bytes);
+            this.position += bytes;
+            return value;
+        }
+
+        /**
+         * @return the next {@code bytes} (1-8) bytes as an unsigned little-endian number
+         */
+        public long le(final int bytes) {
+            this.width(bytes);
+            final long value = getLE(this.buffer, this.position, bytes);
+            this.position += bytes;
+            return value;
+        }
+
+        /**
+         * Reads an EBML variable-length integer with its length marker removed (a Matroska element size).
+         *
+         * @return the value, or -1 for the reserved all-ones "unknown size"
+         */
+        public long vint() {
+            final int length = this.vintLength();
+            final long raw = this.be(length);
+            final long value = raw & ((1L << (7 * length)) - 1);
+            return value == (1L << (7 * length)) - 1 ? -1 : value;
+        }
+
+        /**
+         * Reads an EBML variable-length integer keeping its length marker, the way element IDs are written
+         * ({@code 0x1A45DFA3} for the EBML header).
+         */
+        public long vintId() {
+            return this.be(this.vintLength());
+        }
+
+        /**
+         * Reads an unsigned LEB128 integer (up to 10 bytes).
+         */
+        public long uleb128() {
+            this.align();
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                this.need(1);
+                final int b = this.buffer.get(this.position++);
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return value;
+            }
+            throw new IllegalStateException("LEB128 longer than 10 bytes at " + (this.position - 10));
+        }
+
+        /**
+         * Reads a signed LEB128 integer (up to 10 bytes).
+         */
+        public long sleb128() {
+            this.align();
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                this.need(1);
+                final int b = this.buffer.get(this.position++);
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    final int used = shift + 7;
+                    return used < 64 && (b & 0x40) != 0 ? value | (-1L << used) : value; // SIGN EXTEND
+                }
+            }
+            throw new IllegalStateException("LEB128 longer than 10 bytes at " + (this.position - 10));
+        }
+
+        /**
+         * Reads {@code count} (0-64) bits, most significant bit of each byte first (MPEG, FLAC, H.26x headers).
+         */
+        public long bits(final int count) {
+            if (count < 0 || count > 64) throw new IllegalArgumentException("Bit count must be 0-64: " + count);
+            long value = 0;
+            int left = count;
+            while (left > 0) {
+                if (this.bit == 0) this.need(1);
+                final int take = Math.min(left, 8 - this.bit);
+                final int b = this.buffer.get(this.position) & 0xFF;
+                value = (value << take) | ((b >>> (8 - this.bit - take)) & ((1 << take) - 1));
+                this.advanceBits(take);
+                left -= take;
+            }
+            return value;
+        }
+
+        /**
+         * Reads {@code count} (0-64) bits, least significant bit of each byte first (WebP lossless, DEFLATE).
+         */
+        public long bitsLsb(final int count) {
+            if (count < 0 || count > 64) throw new IllegalArgumentException("Bit count must be 0-64: " + count);
+            long value = 0;
+            int done = 0;
+            while (done < count) {
+                if (this.bit == 0) this.need(1);
+                final int take = Math.min(count - done, 8 - this.bit);
+                final int b = this.buffer.get(this.position) & 0xFF;
+                value |= (long) ((b >>> this.bit) & ((1 << take) - 1)) << done;
+                this.advanceBits(take);
+                done += take;
+            }
+            return value;
+        }
+
+        public boolean bit() {
+            return this.bits(1) != 0;
+        }
+
+        /**
+         * Skips the unread bits of a partially read byte.
+         */
+        public Cursor align() {
+            if (this.bit != 0) {
+                this.bit = 0;
+                this.position++;
+            }
+            return this;
+        }
+
+        /**
+         * Bounds the cursor to the next {@code length} bytes, e.g. the payload of a box, until {@link #exit()}.
+         * Boxes nest; a length past the current bound throws {@link BufferUnderflowException}.
+         */
+        public Cursor enter(final int length) {
+            this.align();
+            this.need(length);
+            if (this.depth == this.limits.length) this.limits = Arrays.copyOf(this.limits, this.depth * 2);
+            this.limits[this.depth++] = this.limit;
+            this.limit = this.position + length;
+            return this;
+        }
+
+        /**
+         * Leaves the innermost {@link #enter(int) entered} box, skipping whatever of it was not read.
+         */
+        public Cursor exit() {
+            if (this.depth == 0) throw new IllegalStateException("No box was entered");
+            this.position = this.limit;
+            this.bit = 0;
+            this.limit = this.limits[--this.depth];
+            return this;
+        }
+
+        /**
+         * @return a cursor over the next {@code length} bytes, sharing memory with this one; this cursor moves past them
+         */
+        public Cursor slice(final int length) {
+            return new Cursor(this.buffer(length), null);
+        }
+
+        /**
+         * @return a read-only view of the next {@code length} bytes, sharing memory with this cursor; this cursor
+         * moves past them
+         */
+        public ByteBuffer buffer(final int length) {
+            this.align();
+            this.need(length);
+            final ByteBuffer view = this.buffer.slice(this.position, length).asReadOnlyBuffer();
+            this.position += length;
+            return view;
+        }
+
+        /**
+         * Does not unmap anything: views from {@link #buffer(int)} and {@link #slice(int)} may still be in use
+         * (e.g. handed to a decoder), and touching an unmapped view crashes the JVM. The mapping goes with the GC.
+         */
+        @Override
+        public void close() {}
+
+        /**
+         * Unmaps the file of a cursor created by {@link DataTool#cursor(Path)} right away, instead of when it is
+         * collected (on Windows the mapping also keeps the file from being deleted or replaced). A no-op for
+         * buffer cursors and slices. Only call it when no view taken from this cursor is used anymore: reading
+         * the cursor or any of its views afterwards crashes the JVM.
+         */
+        public void unmap() {
+            MemTool.unmap(this.mapped);
+        }
+
+        private int vintLength() {
+            this.align();
+            this.need(1);
+            final int first = this.buffer.get(this.position) & 0xFF;
+            if (first == 0) throw new IllegalStateException("Invalid EBML vint at " + this.position);
+            return Integer.numberOfLeadingZeros(first) - 23;
+        }
+
+        private void width(final int bytes) {
+            if (bytes < 1 || bytes > 8) throw new IllegalArgumentException("Width must be 1-8 bytes: " + bytes);
+            this.align();
+            this.need(bytes);
+        }
+
+        private void need(final int bytes) {
+            if (bytes < 0 || this.limit - this.position < bytes) throw new BufferUnderflowException();
+        }
+
+        private void advanceBits(final int count) {
+            this.bit += count;
+            if (this.bit == 8) {
+                this.bit = 0;
+                this.position++;
+            }
+        }
+    }
+
+    private static final class Signature {
+        private final String type;
+        private final int offset;
+        private final byte[] bytes; // PRE-MASKED
+        private final byte[] mask;
+        private final int specificity; // CONSTRAINED BITS
+        private final int order;
+
+        private Signature(final String type, final int offset, final byte[] bytes, final byte[] mask, final int order) {
+            Objects.requireNonNull(type, "Type cannot be null");
+            if (offset < 0) throw new IllegalArgumentException("Offset cannot be negative");
+            if (bytes.length == 0 || bytes.length != mask.length) throw new IllegalArgumentException("Bytes and mask must be non-empty and of the same length");
+            this.type = type;
+            this.offset = offset;
+            this.bytes = new byte[bytes.length];
+            this.mask = mask.clone();
+            int bits = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                this.bytes[i] = (byte) (bytes[i] & mask[i]);
+                bits += Integer.bitCount(mask[i] & 0xFF);
+            }
+            if (bits == 0) throw new IllegalArgumentException("Signature matches anything");
+            this.specificity = bits;
+            this.order = order;
+        }
+
+        private Signature(final String type, final int offset, final String pattern, final int order) {
+            this(type, offset, parse(pattern), order);
+        }
+
+        private Signature(final String type, final int offset, final byte[][] parsed, final int order) {
+            this(type, offset, parsed[0], parsed[1], order);
+        }
+
+        private boolean matches(final ByteBuffer data, final int base, final int length) {
+            if (length - this.offset < this.bytes.length) return false;
+            final int start = base + this.offset;
+            for (int i = 0; i < this.bytes.length; i++) {
+                if ((data.get(start + i) & this.mask[i]) != this.bytes[i]) return false;
+            }
+            return true;
+        }
+
+        // FIRST BYTE FOR THE DISPATCH TABLE, OR -1 WHEN IT DOES NOT PIN DOWN data[0]
+        private int first() {
+            return this.offset == 0 && this.mask[0] == (byte) 0xFF ? this.bytes[0] & 0xFF : -1;
+        }
+
+        // { bytes, mask } OF "'RIFF' ?? ?? ?? ?? 'WEBP'"
+        private static byte[][] parse(final String pattern) {
+            final byte[] bytes = new byte[pattern.length()], mask = new byte[pattern.length()];
+            int n = 0;
+            for (int i = 0; i < pattern.length();) {
+                final char c = pattern.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '\'') {
+                    final int end = pattern.indexOf('\'', i + 1);
+                    if (end < 0) throw new IllegalArgumentException("Unterminated quote in signature: " + pattern);
+                    for (int j = i + 1; j < end; j++) {
+                        bytes[n] = (byte) pattern.charAt(j);
+                        mask[n++] = (byte) 0xFF;
+                    }
+                    i = end + 1;
+                } else if (i + 1 < pattern.length() && c == '?' && pattern.charAt(i + 1) == '?') {
+                    n++; // BYTE AND MASK STAY 0
+                    i += 2;
+                } else if (i + 1 < pattern.length() && Character.digit(c, 16) >= 0 && Character.digit(pattern.charAt(i + 1), 16) >= 0) {
+                    bytes[n] = (byte) (Character.digit(c, 16) << 4 | Character.digit(pattern.charAt(i + 1), 16));
+                    mask[n++] = (byte) 0xFF;
+                    i += 2;
+                } else {
+                    throw new IllegalArgumentException("Invalid signature token at " + i + ": " + pattern);
+                }
+            }
+            return new byte[][] { Arrays.copyOf(bytes, n), Arrays.copyOf(mask, n) };
+        }
+    }
+
+    // IMMUTABLE LOOKUP STRUCTURE: SIGNATURES PINNING data[0] BUCKETED BY IT, THE REST IN ONE LIST; ALL MOST SPECIFIC FIRST
+    private static final class Signatures {
+        private static final Signature[] NONE = new Signature[0];
+        private static final Comparator<Signature> ORDER = Comparator.<Signature>comparingInt(s -> -s.specificity).thenComparingInt(s -> -s.order);
+
+        private final List<Signature> all;
+        private final Signature[][] byFirst = new Signature[256][];
+        private final Signature[] anchored;
+
+        private Signatures(final List<Signature> all) {
+            this.all = List.copyOf(all);
+            final List<Signature> sorted = new ArrayList<>(all);
+            sorted.sort(ORDER);
+
+            final List<List<Signature>> buckets = new ArrayList<>(256);
+            for (int i = 0; i < 256; i++) buckets.add(new ArrayList<>());
+            final List<Signature> anchored = new ArrayList<>();
+            for (final Signature signature: sorted) {
+                final int first = signature.first();
+                (first < 0 ? anchored : buckets.get(first)).add(signature);
+            }
+            for (int i = 0; i < 256; i++) {
+                this.byFirst[i] = buckets.get(i).toArray(NONE);
+            }
+            this.anchored = anchored.toArray(NONE);
+        }
+
+        private static List<Signature> builtin() {
+            final String[][] table = {
+                    // TYPE, OFFSET, PATTERN
+                    { "image/png", "0", "89 'PNG' 0D 0A 1A 0A" },
+                    { "image/jpeg", "0", "FF D8 FF" },
+                    { "image/gif", "0", "'GIF87a'" },
+                    { "image/gif", "0", "'GIF89a'" },
+                    { "image/webp", "0", "'RIFF' ?? ?? ?? ?? 'WEBP'" },
+                    { "image/bmp", "0", "'BM'" },
+                    { "image/tiff", "0", "'II' 2A 00" },
+                    { "image/tiff", "0", "'MM' 00 2A" },
+                    { "video/mp4", "4", "'ftyp'" },
+                    { "image/avif", "4", "'ftypavif'" },
+                    { "image/avif", "4", "'ftypavis'" },
+                    { "image/heic", "4", "'ftypheic'" },
+                    { "image/heic", "4", "'ftypheix'" },
+                    { "video/quicktime", "4", "'ftypqt  '" },
+                    { "audio/mp4", "4", "'ftypM4A '" },
+                    { "video/x-matroska", "0", "1A 45 DF A3" },
+                    // DocType "webm" RIGHT AFTER A 1 OR 8 BYTE HEADER SIZE AND THE USUAL VERSION FIELDS
+                    { "video/webm", "0", "1A 45 DF A3 ?? 42 86 81 01 42 F7 81 01 42 F2 81 04 42 F3 81 08 42 82 84 'webm'" },
+                    { "video/webm", "0", "1A 45 DF A3 01 00 00 00 00 00 00 ?? 42 86 81 01 42 F7 81 01 42 F2 81 04 42 F3 81 08 42 82 84 'webm'" },
+                    { "video/webm", "0", "1A 45 DF A3 ?? 42 82 84 'webm'" },
+                    { "application/ogg", "0", "'OggS' 00" },
+                    { "audio/ogg", "0", "'OggS' 00" + " ??".repeat(23) + " 'OpusHead'" },
+                    { "audio/ogg", "0", "'OggS' 00" + " ??".repeat(23) + " 01 'vorbis'" },
+                    { "audio/ogg", "0", "'OggS' 00" + " ??".repeat(23) + " 7F 'FLAC'" },
+                    { "video/ogg", "0", "'OggS' 00" + " ??".repeat(23) + " 80 'theora'" },
+                    // TRANSPORT STREAM: SYNC BYTE AT THE START OF TWO CONSECUTIVE 188 BYTE PACKETS
+                    { "video/mp2t", "0", "47" + " ??".repeat(187) + " 47" },
+                    { "video/x-msvideo", "0", "'RIFF' ?? ?? ?? ?? 'AVI '" },
+                    { "audio/wav", "0", "'RIFF' ?? ?? ?? ?? 'WAVE'" },
+                    { "audio/flac", "0", "'fLaC'" },
+                    { "audio/mpeg", "0", "'ID3'" },
+            };
+            final List<Signature> list = new ArrayList<>(table.length + 2);
+            for (final String[] row: table) {
+                list.add(new Signature(row[0], Integer.parseInt(row[1]), row[2], list.size()));
+            }
+            // FRAME SYNC: 11 BITS FOR MPEG AUDIO, 12 PLUS LAYER 00 FOR AAC ADTS (MORE SPECIFIC, SO IT WINS)
+            list.add(new Signature("audio/mpeg", 0, new byte[] { (byte) 0xFF, (byte) 0xE0 }, new byte[] { (byte) 0xFF, (byte) 0xE0 }, list.size()));
+            list.add(new Signature("audio/aac", 0, new byte[] { (byte) 0xFF, (byte) 0xF0 }, new byte[] { (byte) 0xFF, (byte) 0xF6 }, list.size()));
+            return list;
+        }
+    }
 }
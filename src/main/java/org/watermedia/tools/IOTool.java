@@ -3,22 +3,77 @@ package org.watermedia.tools;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 public class IOTool {
     public static final int BUFFER_SIZE = 1024 * 64; // 64 KB
     public static final String VERSION_FILE = "version.cfg";
+    public static final long TRANSFER_CHUNK = 8 * 1024 * 1024; // copy/write PROGRESS GRANULARITY
+
+    // jarReadZip INDEX: OPEN ZipFiles PER CLASSLOADER AND RESOURCE, PLUS AN LRU OF RECENTLY READ CONTENTS KEYED
+    // BY THE ZipFile INSTANCE, SO TWO LOADERS NEVER SHARE AN ENTRY
+    private static final Map<ClassLoader, Map<String, ZipFile>> ZIP_INDEX = new WeakHashMap<>();
+    private static final int ZIP_CONTENT_MAX_BYTES = 4 * 1024 * 1024;
+    private static final LinkedHashMap<ZipContent, byte[]> ZIP_CONTENT = new LinkedHashMap<>(16, 0.75f, true);
+    private static long zipContentBytes = 0; // GUARDED BY ZIP_CONTENT
+
+    // sha256: FILES FROM THIS SIZE ARE HASHED THROUGH mmap WINDOWS OF MMAP_WINDOW BYTES
+    private static final long MMAP_THRESHOLD = 1024 * 1024;
+    private static final long MMAP_WINDOW = 64L * 1024 * 1024;
+    private static volatile DigestCache digestCache; // null WHEN DISABLED
+
+    // TREE WALK MODES: NON-DIRECTORY ENTRIES, DELETED ENTRIES, ALL ENTRIES
+    private static final int WALK_COUNT = 0, WALK_DELETE = 1, WALK_ALL = 2;
+    private static final int WALK_FANOUT_DEPTH = 2;
+    private static final Set<Path> DELETE_ON_EXIT = new LinkedHashSet<>();
 
     public static String platformClassifier() {
         final String os = System.getProperty("os.name").toLowerCase();
@@ -57,79 +112,267 @@ public class IOTool {
     }
 
     public static boolean copy(final File inFile, final File outFile) {
-        try (final var in = Files.newInputStream(inFile.toPath())) {
-            return write(in, outFile);
+        return copy(inFile, outFile, null);
+    }
+
+    // FILE-TO-FILE COPY THROUGH FileChannel.transferTo, WHICH THE KERNEL SERVES WITHOUT USERSPACE COPIES
+    // (copy_file_range/sendfile ON LINUX); listener (MAY BE null) IS CALLED ONCE PER TRANSFER_CHUNK
+    public static boolean copy(final File inFile, final File outFile, final TransferListener listener) {
+        try (final FileChannel in = FileChannel.open(inFile.toPath(), StandardOpenOption.READ);
+             final FileChannel out = FileChannel.open(outFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final long size = in.size();
+            final Transfer progress = new Transfer(size, listener);
+            long position = 0;
+            while (position < size) {
+                final long sent = in.transferTo(position, Math.min(TRANSFER_CHUNK, size - position), out);
+                if (sent <= 0) break; // SHRUNK WHILE COPYING
+                position += sent;
+                progress.advance(sent);
+            }
+            progress.done();
+            return true;
         } catch (final IOException e) {
             return false;
         }
     }
 
     public static boolean write(final InputStream in, final File outFile) {
-        final byte[] buffer = new byte[BUFFER_SIZE];
-        int bytesRead;
+        return write(in, outFile, null);
+    }
 
-        try (in; final var out = Files.newOutputStream(outFile.toPath())) {
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
+    // A FileInputStream IS COPIED THROUGH ITS CHANNEL (ZERO-COPY FROM ITS CURRENT POSITION); ANY OTHER STREAM
+    // IS COPIED BUFFER_SIZE BYTES AT A TIME. CLOSES in
+    public static boolean write(final InputStream in, final File outFile, final TransferListener listener) {
+        try (in) {
+            if (in instanceof FileInputStream file) {
+                return write(file.getChannel(), outFile, listener);
+            }
+            // NOT transferFrom: OVER Channels.newChannel IT READS 8 KB AT A TIME AND COPIES TWICE
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            final Transfer progress = new Transfer(-1, listener);
+            try (final OutputStream out = Files.newOutputStream(outFile.toPath())) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    progress.advance(read);
+                }
             }
+            progress.done();
             return true;
         } catch (final IOException e) {
             return false;
         }
     }
 
+    /**
+     * Writes everything readable from {@code in} into {@code outFile}, replacing it. File channels are
+     * transferred zero-copy from their current position; other channels are read {@value #BUFFER_SIZE} bytes
+     * at a time into a pooled direct buffer. Does not close {@code in}.
+     *
+     * @param listener receives progress once per {@value #TRANSFER_CHUNK} bytes and at the end; may be {@code null}
+     * @return {@code false} on an IO error
+     */
+    public static boolean write(final ReadableByteChannel in, final File outFile, final TransferListener listener) {
+        try (final FileChannel out = FileChannel.open(outFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (in instanceof FileChannel file) {
+                long position = file.position();
+                final long size = file.size();
+                final Transfer progress = new Transfer(size - position, listener);
+                while (position < size) {
+                    final long sent = file.transferTo(position, Math.min(TRANSFER_CHUNK, size - position), out);
+                    if (sent <= 0) break;
+                    position += sent;
+                    progress.advance(sent);
+                }
+                file.position(position);
+                progress.done();
+            } else {
+                // DIRECT, SO THE WRITE DOES NOT GO THROUGH ANOTHER TEMPORARY BUFFER
+                final ByteBuffer buffer = BufferTool.acquire(BUFFER_SIZE);
+                try {
+                    final Transfer progress = new Transfer(-1, listener);
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) out.write(buffer);
+                        buffer.clear();
+                        progress.advance(read);
+                    }
+                    progress.done();
+                } finally {
+                    BufferTool.release(buffer);
+                }
+            }
+            return true;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    // COUNTS THE NON-DIRECTORY ENTRIES UNDER path (1 IF path IS ITSELF A FILE), WALKING SUBTREES IN PARALLEL
     public static int count(final File path) {
-        int count = 0;
         if (path == null || !path.exists()) {
             return 0;
         }
-        if (path.isDirectory()) {
-            final File[] files = path.listFiles();
-            if (files != null) {
-                for (final File file: files) {
-                    count += count(file);
-                }
-            }
-        } else {
-            count++;
-        }
-        return count;
+        return walk(path.toPath(), WALK_COUNT, null, true);
     }
 
+    // DELETES path AND EVERYTHING UNDER IT, SUBTREES IN PARALLEL; RETURNS HOW MANY ENTRIES WERE DELETED
     public static int delete(final File path) {
-        int deletedCount = 0;
         if (path == null || !path.exists()) {
             return 0;
         }
-        if (path.isDirectory()) {
-            final File[] files = path.listFiles();
-            if (files != null) {
-                for (final File file: files) {
-                    deletedCount += delete(file);
-                }
-            }
-        }
-        if (path.delete()) {
-            deletedCount++;
+        return walk(path.toPath(), WALK_DELETE, null, true);
+    }
+
+    /**
+     * Deletes {@code path} in the background and returns immediately. The tree is first renamed to a hidden
+     * sibling ({@code .name.deleting-N}), so {@code path} can be recreated right away; when the rename is
+     * not possible it is deleted in place.
+     *
+     * @param progress incremented per deleted entry while the delete runs; may be {@code null}
+     * @return a future completing with the number of deleted entries
+     */
+    public static CompletableFuture<Integer> deleteAsync(final File path, final AtomicInteger progress) {
+        if (path == null || !path.exists()) {
+            return CompletableFuture.completedFuture(0);
         }
-        return deletedCount;
+        Path target = path.toPath().toAbsolutePath();
+        final Path trash = target.resolveSibling("." + target.getFileName() + ".deleting-" + System.nanoTime());
+        try {
+            Files.move(target, trash, StandardCopyOption.ATOMIC_MOVE);
+            target = trash;
+        } catch (final IOException | UnsupportedOperationException ignored) {} // E.G. A FILE IN USE ON WINDOWS
+        final Path victim = target;
+        return CompletableFuture.supplyAsync(() -> walk(victim, WALK_DELETE, progress, true), Walker.POOL);
+    }
+
+    public static CompletableFuture<Integer> deleteAsync(final File path) {
+        return deleteAsync(path, null);
     }
 
+    // DELETES path AND EVERYTHING UNDER IT WHEN THE JVM EXITS. ONE SHUTDOWN HOOK SERVES ALL REGISTERED TREES,
+    // INSTEAD OF ONE File.deleteOnExit ENTRY PER FILE. RETURNS HOW MANY ENTRIES ARE CURRENTLY UNDER path
     public static int deleteOnExit(final File path) {
-        int deletedCount = 0;
         if (path == null || !path.exists()) {
             return 0;
         }
-        if (path.isDirectory()) {
-            final File[] files = path.listFiles();
-            if (files != null) {
-                for (final File file: files) {
-                    deletedCount += deleteOnExit(file);
+        synchronized (DELETE_ON_EXIT) {
+            if (DELETE_ON_EXIT.isEmpty()) {
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    synchronized (DELETE_ON_EXIT) {
+                        for (final Path root: DELETE_ON_EXIT) {
+                            walk(root, WALK_DELETE, null, false); // THE POOL MAY BE GOING DOWN WITH THE JVM
+                        }
+                    }
+                }, "IOTool-DeleteOnExit"));
+            }
+            DELETE_ON_EXIT.add(path.toPath().toAbsolutePath());
+        }
+        return walk(path.toPath(), WALK_ALL, null, true);
+    }
+
+    // SHARED WALKER FOR count/delete/deleteOnExit. THE TOP WALK_FANOUT_DEPTH LEVELS FAN OUT ONE FORK-JOIN TASK
+    // PER DIRECTORY; BELOW THAT EACH SUBTREE IS WALKED ITERATIVELY BY Files.walkFileTree, SO DEEP TREES NEITHER
+    // RECURSE ON THE STACK NOR FLOOD THE POOL WITH TINY TASKS. SYMLINKS ARE NEVER FOLLOWED
+    private static int walk(final Path root, final int mode, final AtomicInteger progress, final boolean parallel) {
+        if (!Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+            return visitEntry(root, false, mode, progress);
+        }
+        return parallel
+                ? Walker.POOL.invoke(new Walker(root, 0, mode, progress))
+                : Walker.walkTree(root, mode, progress);
+    }
+
+    // ACCOUNTS ONE ENTRY FOR mode; FOR DELETES, ONLY ENTRIES ACTUALLY REMOVED COUNT
+    private static int visitEntry(final Path entry, final boolean directory, final int mode, final AtomicInteger progress) {
+        final int n;
+        switch (mode) {
+            case WALK_COUNT -> n = directory ? 0 : 1;
+            case WALK_DELETE -> {
+                int deleted;
+                try {
+                    deleted = Files.deleteIfExists(entry) ? 1 : 0;
+                } catch (final IOException e) {
+                    deleted = 0;
                 }
+                n = deleted;
             }
+            default -> n = 1;
+        }
+        if (progress != null && n != 0) progress.addAndGet(n);
+        return n;
+    }
+
+    private static final class Walker extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+        private static final ForkJoinPool POOL = new ForkJoinPool(ThreadTool.halfLeastThreads(2), pool -> {
+            final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("IOTool-Walk-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+
+        private final Path dir;
+        private final int depth;
+        private final int mode;
+        private final AtomicInteger progress;
+
+        private Walker(final Path dir, final int depth, final int mode, final AtomicInteger progress) {
+            this.dir = dir;
+            this.depth = depth;
+            this.mode = mode;
+            this.progress = progress;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (this.depth >= WALK_FANOUT_DEPTH) {
+                return walkTree(this.dir, this.mode, this.progress);
+            }
+            int n = 0;
+            final List<Walker> subtrees = new ArrayList<>();
+            try (final DirectoryStream<Path> entries = Files.newDirectoryStream(this.dir)) {
+                for (final Path entry: entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        final Walker subtree = new Walker(entry, this.depth + 1, this.mode, this.progress);
+                        subtree.fork();
+                        subtrees.add(subtree);
+                    } else {
+                        n += visitEntry(entry, false, this.mode, this.progress);
+                    }
+                }
+            } catch (final IOException ignored) {}
+            for (final Walker subtree: subtrees) {
+                n += subtree.join();
+            }
+            return n + visitEntry(this.dir, true, this.mode, this.progress); // POST-ORDER: EMPTY BY NOW ON DELETE
+        }
+
+        private static int walkTree(final Path root, final int mode, final AtomicInteger progress) {
+            final int[] n = new int[1];
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                        n[0] += visitEntry(file, false, mode, progress);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) {
+                        n[0] += visitEntry(dir, true, mode, progress);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (final IOException ignored) {}
+            return n[0];
         }
-        path.deleteOnExit();
-        return ++deletedCount;
     }
 
     public static boolean closeQuietly(final AutoCloseable closeable) {
@@ -172,22 +415,90 @@ public class IOTool {
         file.toFile().setExecutable(true);
     }
 
-    // LOWERCASE HEX SHA-256 OF file
+    // LOWERCASE HEX SHA-256 OF file. WITH A DIGEST CACHE CONFIGURED, AN UNCHANGED FILE IS NOT RE-HASHED
     public static String sha256(final Path file) throws IOException {
-        final MessageDigest digest;
+        return sha256(file, false);
+    }
+
+    /**
+     * Lowercase hex SHA-256 of {@code file}. When a {@link #digestCache(Path) digest cache} is configured
+     * and the file's size, modification time and file key still match the cached entry, the cached digest
+     * is returned without reading the file.
+     *
+     * @param recheck always hash the file (paranoid mode); the cache is still refreshed with the result
+     */
+    public static String sha256(final Path file, final boolean recheck) throws IOException {
+        final DigestCache cache = digestCache;
+        if (cache == null) return hashFile(file);
+
+        final BasicFileAttributes before = Files.readAttributes(file, BasicFileAttributes.class);
+        final String key = file.toAbsolutePath().normalize().toString();
+        if (!recheck) {
+            final String cached = cache.get(key, before);
+            if (cached != null) return cached;
+        }
+        final String hash = hashFile(file);
+        // ONLY TRUST THE RESULT IF THE FILE DID NOT CHANGE WHILE IT WAS BEING READ
+        if (DigestCache.stamp(before).equals(DigestCache.stamp(Files.readAttributes(file, BasicFileAttributes.class)))) {
+            cache.put(key, before, hash);
+        }
+        return hash;
+    }
+
+    // READS file THROUGH ITS FileChannel: LARGE FILES ARE MAPPED WINDOW BY WINDOW AND HASHED STRAIGHT FROM
+    // THE PAGE CACHE; SMALL ONES (AND ALL ON WINDOWS, WHERE A LIVE MAPPING BLOCKS DELETING THE FILE) ARE
+    // READ INTO A POOLED DIRECT BUFFER. NO PER-FILE HEAP BUFFER EITHER WAY, THOUGH MessageDigest ITSELF STILL
+    // COPIES DIRECT INPUT THROUGH A SMALL HEAP ARRAY BEFORE HASHING IT
+    private static String hashFile(final Path file) throws IOException {
+        final MessageDigest digest = sha256Digest();
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size >= MMAP_THRESHOLD && !"windows".equals(os())) {
+                for (long position = 0; position < size; position += MMAP_WINDOW) {
+                    final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MMAP_WINDOW, size - position));
+                    try {
+                        digest.update(window);
+                    } finally {
+                        MemTool.unmap(window);
+                    }
+                }
+            } else {
+                final ByteBuffer buffer = BufferTool.acquire(BUFFER_SIZE * 4);
+                try {
+                    while (channel.read(buffer) != -1) {
+                        buffer.flip();
+                        digest.update(buffer);
+                        buffer.clear();
+                    }
+                } finally {
+                    BufferTool.release(buffer);
+                }
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Persists {@link #sha256(Path) digests} in {@code file}, keyed by absolute path and validated by
+     * size, modification time and file key, so unchanged files are never hashed twice across launches.
+     *
+     * @param file cache file, loaded now if it exists; {@code null} disables the cache
+     */
+    public static void digestCache(final Path file) {
+        digestCache = file == null ? null : new DigestCache(file);
+    }
+
+    // FRESH SHA-256 MessageDigest (THEY ARE NOT THREAD-SAFE, SO ONE PER HASHING JOB)
+    public static MessageDigest sha256Digest() throws IOException {
         try {
-            digest = MessageDigest.getInstance("SHA-256");
+            return MessageDigest.getInstance("SHA-256");
         } catch (final Exception e) {
             throw new IOException("SHA-256 is unavailable", e);
         }
-        try (final InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
-            final byte[] buffer = new byte[BUFFER_SIZE];
-            int read;
-            while ((read = in.read(buffer)) != -1) {
-                digest.update(buffer, 0, read);
-            }
-        }
-        final byte[] hash = digest.digest();
+    }
+
+    // LOWERCASE HEX OF hash
+    public static String hex(final byte[] hash) {
         final StringBuilder sb = new StringBuilder(hash.length * 2);
         for (final byte b : hash) {
             sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
@@ -198,7 +509,12 @@ public class IOTool {
     // THROWS (AND DELETES file) IF ITS SHA-256 DOES NOT MATCH expected (CASE-INSENSITIVE HEX). THE DELETE
     // LETS A RETRY RE-DOWNLOAD INSTEAD OF TRUSTING A CORRUPT FILE.
     public static void verifySha256(final Path file, final String expected) throws IOException {
-        final String actual = sha256(file);
+        verifySha256(file, expected, false);
+    }
+
+    // SAME AS ABOVE; recheck BYPASSES THE DIGEST CACHE (SEE sha256(Path, boolean))
+    public static void verifySha256(final Path file, final String expected, final boolean recheck) throws IOException {
+        final String actual = sha256(file, recheck);
         if (!expected.equalsIgnoreCase(actual)) {
             Files.deleteIfExists(file);
             throw new IOException("SHA-256 mismatch for " + file.getFileName()
@@ -206,44 +522,272 @@ public class IOTool {
         }
     }
 
+    /**
+     * {@link #verifySha256(Path, String, boolean) Verifies} every file in {@code expected} in parallel.
+     * Each mismatching file is deleted; all failures are reported together.
+     *
+     * @param expected expected hex SHA-256 per file
+     * @throws IOException if any file is missing, unreadable or mismatching; each failure is attached as
+     * a suppressed exception
+     */
+    public static void verifySha256(final Map<Path, String> expected, final boolean recheck) throws IOException {
+        final DigestCache cache = digestCache;
+        if (cache != null) cache.begin(); // ONE CACHE WRITE FOR THE WHOLE BATCH, NOT ONE PER FILE
+        try {
+            verifySha256Parallel(expected, recheck);
+        } finally {
+            if (cache != null) cache.end();
+        }
+    }
+
+    private static void verifySha256Parallel(final Map<Path, String> expected, final boolean recheck) throws IOException {
+        final int threads = Math.min(Math.max(1, expected.size()), ThreadTool.halfLeastThreads(2));
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, ThreadTool.createFactory("IOTool-Hash", Thread.NORM_PRIORITY));
+        final List<Future<?>> futures = new ArrayList<>(expected.size());
+        IOException failure = null;
+        try {
+            for (final Map.Entry<Path, String> e: expected.entrySet()) {
+                futures.add(executor.submit(() -> {
+                    verifySha256(e.getKey(), e.getValue(), recheck);
+                    return null;
+                }));
+            }
+            for (final Future<?> future: futures) {
+                try {
+                    future.get();
+                } catch (final ExecutionException e) {
+                    if (failure == null) failure = new IOException("SHA-256 verification failed");
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Verification interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+        if (failure != null) throw failure;
+    }
+
     public static boolean jarExtractZip(final String resource, final File output, final ClassLoader from) throws Exception {
         return jarExtractZip(jarOpenFile(resource, from), output);
     }
 
     // THROWS BECAUSE THIS IS A MORE COMPLEX TASK AND THE CALLER SHOULD HANDLE FAILURES
+    // THE STREAM IS SPOOLED TO A TEMP FILE SO ENTRIES CAN BE INFLATED IN PARALLEL (SEE extractZip)
     public static boolean jarExtractZip(final InputStream is, final File output) throws Exception {
-        try (final var in = new BufferedInputStream(is, BUFFER_SIZE); final var zip = new ZipInputStream(in)) {
-            ZipEntry entry;
-            final byte[] buffer = new byte[BUFFER_SIZE]; // THIS IS OUTSIDE THE LOOP TO AVOID MULTIPLE ALLOCATIONS PER ENTRY
-            while ((entry = zip.getNextEntry()) != null) {
-                final File outFile = new File(output, entry.getName());
+        final Path spooled = spool(is);
+        try {
+            extractZip(spooled, output);
+            return true;
+        } finally {
+            Files.deleteIfExists(spooled);
+        }
+    }
+
+    /**
+     * Extracts the zip at {@code zip} into {@code output} using random access: entries are inflated in
+     * parallel on a bounded pool, largest first, each into an output file preallocated to its final size.
+     * Every entry path is validated before anything is written, so an archive with an entry resolving
+     * outside {@code output} (zip-slip) is rejected as a whole.
+     *
+     * @return how many entries and uncompressed bytes were extracted
+     * @throws IOException on a malicious entry path, a corrupt archive or a failed write
+     */
+    public static ExtractResult extractZip(final Path zip, final File output) throws IOException {
+        final Path root = output.toPath().toAbsolutePath().normalize();
+        try (final ZipFile file = new ZipFile(zip.toFile())) {
+            // RESOLVE AND VALIDATE EVERYTHING UP FRONT
+            final List<ZipEntry> files = new ArrayList<>();
+            final Set<Path> dirs = new HashSet<>();
+            dirs.add(root);
+            final var entries = file.entries();
+            int count = 0;
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                final Path target = resolveEntry(root, entry.getName());
                 if (entry.isDirectory()) {
-                    if (!outFile.exists() && !outFile.mkdirs()) {
-                        return false;
-                    }
+                    dirs.add(target);
                 } else {
-                    final File parentDir = outFile.getParentFile();
-                    if (!parentDir.exists() && !parentDir.mkdirs()) {
-                        return false;
-                    }
-                    try (final var out = Files.newOutputStream(outFile.toPath())) {
-                        int len;
-                        while ((len = zip.read(buffer)) > 0) {
-                            out.write(buffer, 0, len);
-                        }
+                    dirs.add(target.getParent());
+                    files.add(entry);
+                }
+                count++;
+            }
+            for (final Path dir: dirs) {
+                Files.createDirectories(dir);
+            }
+
+            // LARGEST FIRST SO ONE BIG TRAILING ENTRY DOES NOT SERIALIZE THE TAIL
+            files.sort(Comparator.comparingLong(ZipEntry::getSize).reversed());
+            final AtomicLong bytes = new AtomicLong();
+            final int threads = Math.min(Math.max(1, files.size()), ThreadTool.halfLeastThreads(2));
+            final ExecutorService executor = Executors.newFixedThreadPool(threads, ThreadTool.createFactory("IOTool-Unzip", Thread.NORM_PRIORITY));
+            try {
+                final List<Future<?>> futures = new ArrayList<>(files.size());
+                for (final ZipEntry entry: files) {
+                    futures.add(executor.submit(() -> {
+                        bytes.addAndGet(extractEntry(file, entry, resolveEntry(root, entry.getName())));
+                        return null;
+                    }));
+                }
+                for (final Future<?> future: futures) {
+                    try {
+                        future.get();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Extraction interrupted: " + zip);
+                    } catch (final ExecutionException e) {
+                        if (e.getCause() instanceof IOException io) throw io;
+                        throw new IOException("Failed to extract " + zip, e.getCause());
                     }
                 }
-                zip.closeEntry();
+            } finally {
+                executor.shutdownNow();
             }
-            return true;
+            return new ExtractResult(count, bytes.get());
         }
     }
 
+    // RESOLVES name UNDER root, REJECTING ANY ENTRY THAT WOULD LAND OUTSIDE IT (ZIP-SLIP)
+    private static Path resolveEntry(final Path root, final String name) throws IOException {
+        final Path target = root.resolve(name).normalize();
+        if (!target.startsWith(root)) {
+            throw new IOException("Zip entry escapes the output directory: " + name);
+        }
+        return target;
+    }
+
+    private static long extractEntry(final ZipFile file, final ZipEntry entry, final Path target) throws IOException {
+        final long size = entry.getSize(); // -1 WHEN UNKNOWN
+        try (final var in = file.getInputStream(entry); final var out = new RandomAccessFile(target.toFile(), "rw")) {
+            out.setLength(Math.max(0, size)); // RESERVE THE FINAL SIZE UP FRONT; ALSO TRUNCATES A STALE FILE
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            long written = 0;
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+                written += read;
+            }
+            if (size >= 0 && written != size) {
+                throw new IOException("Corrupt zip entry " + entry.getName() + " (" + written + "/" + size + " bytes)");
+            }
+            return written;
+        }
+    }
+
+    // COPIES in INTO A TEMP FILE (CLOSING in) FOR APIS THAT NEED RANDOM ACCESS; THE CALLER DELETES IT
+    private static Path spool(final InputStream in) throws IOException {
+        if (in == null) throw new IOException("Source stream cannot be null (missing resource?)");
+        final Path tmp = Files.createTempFile("watermedia-", ".spool");
+        try (in) {
+            Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return tmp;
+    }
+
     // READ A FILE INSIDE A ZIP, WHICH IS INSIDE THE JAR RESOURCE AND RETURN AS STRING
     public static String jarReadZip(final String zipResource, final String fileInZip, final ClassLoader from) {
-        return jarReadZip(jarOpenFile(zipResource, from), fileInZip);
+        final byte[] data = jarReadZipCached(zipResource, fileInZip, from);
+        return data == null ? null : new String(data, StandardCharsets.UTF_8);
+    }
+
+    // SAME AS jarReadZip BUT RETURNS THE RAW BYTES (A COPY THE CALLER MAY MODIFY)
+    public static byte[] jarReadZipBytes(final String zipResource, final String fileInZip, final ClassLoader from) {
+        final byte[] data = jarReadZipCached(zipResource, fileInZip, from);
+        return data == null ? null : data.clone();
+    }
+
+    /**
+     * Closes every zip indexed by {@link #jarReadZip(String, String, ClassLoader)} and drops the cached
+     * contents; the next read indexes the zip again.
+     */
+    public static void jarZipCacheClear() {
+        synchronized (ZIP_INDEX) {
+            for (final Map<String, ZipFile> zips: ZIP_INDEX.values()) {
+                zips.values().forEach(IOTool::closeQuietly);
+            }
+            ZIP_INDEX.clear();
+        }
+        synchronized (ZIP_CONTENT) {
+            ZIP_CONTENT.clear();
+            zipContentBytes = 0;
+        }
     }
 
+    // THE FIRST READ OF A ZIP RESOURCE SPOOLS IT TO DISK AND OPENS IT AS A ZipFile, WHICH PARSES THE CENTRAL
+    // DIRECTORY ONCE INTO A NAME->OFFSET TABLE; LATER READS SEEK STRAIGHT TO THE ENTRY. SMALL RESULTS ARE
+    // ALSO KEPT IN A BOUNDED LRU SO REPEATED READS SKIP INFLATING ALTOGETHER
+    private static byte[] jarReadZipCached(final String zipResource, final String fileInZip, final ClassLoader from) {
+        final ZipFile zip;
+        try {
+            zip = jarZipIndex(zipResource, from);
+        } catch (final Exception e) {
+            return null;
+        }
+        if (zip == null) return null;
+        final ZipContent key = new ZipContent(zip, fileInZip);
+        synchronized (ZIP_CONTENT) {
+            final byte[] hit = ZIP_CONTENT.get(key);
+            if (hit != null) return hit;
+        }
+
+        final byte[] data;
+        try {
+            final ZipEntry entry = zip.getEntry(fileInZip);
+            if (entry == null || entry.isDirectory()) return null;
+            try (final InputStream in = zip.getInputStream(entry)) {
+                data = in.readAllBytes();
+            }
+        } catch (final Exception e) {
+            return null;
+        }
+
+        if (data.length <= ZIP_CONTENT_MAX_BYTES / 4) { // ONE BIG FILE MUST NOT FLUSH EVERYTHING ELSE
+            synchronized (ZIP_CONTENT) {
+                final byte[] previous = ZIP_CONTENT.put(key, data);
+                zipContentBytes += data.length - (previous == null ? 0 : previous.length);
+                final var it = ZIP_CONTENT.values().iterator();
+                while (zipContentBytes > ZIP_CONTENT_MAX_BYTES && it.hasNext()) {
+                    zipContentBytes -= it.next().length;
+                    it.remove();
+                }
+            }
+        }
+        return data;
+    }
+
+    private static ZipFile jarZipIndex(final String zipResource, final ClassLoader from) throws IOException {
+        synchronized (ZIP_INDEX) {
+            final Map<String, ZipFile> zips = ZIP_INDEX.computeIfAbsent(from, k -> new HashMap<>());
+            ZipFile zip = zips.get(zipResource);
+            if (zip == null) {
+                final InputStream in = jarOpenFile(zipResource, from);
+                if (in == null) return null;
+                // OPEN_DELETE: THE SPOOLED COPY IS UNLINKED ONCE OPEN, SO NOTHING IS LEFT BEHIND ON EXIT
+                final Path spooled = spool(in);
+                try {
+                    zip = new ZipFile(spooled.toFile(), ZipFile.OPEN_READ | ZipFile.OPEN_DELETE);
+                } catch (final IOException | RuntimeException e) {
+                    try {
+                        Files.deleteIfExists(spooled); // NOT A ZIP: NOTHING WILL EVER UNLINK IT
+                    } catch (final IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                    throw e;
+                }
+                zips.put(zipResource, zip);
+            }
+            return zip;
+        }
+    }
+
+    // ZipFile KEEPS IDENTITY equals, SO THIS ONLY MATCHES READS THROUGH THE SAME OPEN ZIP
+    private record ZipContent(ZipFile zip, String entry) {}
+
     public static String jarReadZip(final InputStream in, final String fileInZip) {
         try (in; final var zip = new ZipInputStream(in)) {
             ZipEntry entry;
@@ -287,4 +831,120 @@ public class IOTool {
         return is;
     }
 
+    // PATH -> "size|mtime|fileKey|sha256", MIRRORED IN A PROPERTIES FILE. WRITES GO THROUGH A TEMP FILE AND
+    // AN ATOMIC MOVE; A CORRUPT OR UNWRITABLE CACHE ONLY MEANS FILES GET HASHED AGAIN. INSIDE A BATCH
+    // (begin/end) NEW DIGESTS ONLY MARK THE CACHE DIRTY, AND THE LAST end WRITES IT ONCE
+    private static final class DigestCache {
+        private final Path file;
+        private final Properties entries = new Properties(); // SYNCHRONIZED (HASHTABLE)
+        private final AtomicInteger batches = new AtomicInteger();
+        private volatile boolean dirty;
+
+        private DigestCache(final Path file) {
+            this.file = file;
+            if (Files.isRegularFile(file)) {
+                try (final InputStream in = Files.newInputStream(file)) {
+                    this.entries.load(in);
+                } catch (final IOException | IllegalArgumentException e) {
+                    this.entries.clear();
+                }
+            }
+        }
+
+        private String get(final String key, final BasicFileAttributes attrs) {
+            final String value = this.entries.getProperty(key);
+            final String stamp = stamp(attrs);
+            if (value == null || value.length() <= stamp.length() || !value.startsWith(stamp)) return null;
+            return value.substring(stamp.length());
+        }
+
+        private void put(final String key, final BasicFileAttributes attrs, final String hash) {
+            if (hash.equals(this.get(key, attrs))) return;
+            this.entries.setProperty(key, stamp(attrs) + hash);
+            this.dirty = true;
+            if (this.batches.get() == 0) this.save();
+        }
+
+        private void begin() {
+            this.batches.incrementAndGet();
+        }
+
+        private void end() {
+            if (this.batches.decrementAndGet() == 0) this.save();
+        }
+
+        private synchronized void save() {
+            if (!this.dirty) return;
+            this.dirty = false; // BEFORE THE WRITE: A put RACING IT MARKS THE CACHE DIRTY AGAIN
+            try {
+                final Path dir = this.file.toAbsolutePath().getParent();
+                Files.createDirectories(dir);
+                final Path tmp = Files.createTempFile(dir, this.file.getFileName().toString(), ".tmp");
+                try (final OutputStream out = Files.newOutputStream(tmp)) {
+                    this.entries.store(out, null);
+                }
+                move(tmp, this.file);
+            } catch (final IOException e) {
+                this.dirty = true; // TRY AGAIN ON THE NEXT SAVE
+            }
+        }
+
+        private static String stamp(final BasicFileAttributes attrs) {
+            return attrs.size() + "|" + attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS) + "|" + attrs.fileKey() + "|";
+        }
+    }
+
+    /**
+     * Progress callback for {@link #copy(File, File, TransferListener)} and the {@code write} variants.
+     * Called once per {@value #TRANSFER_CHUNK} bytes and once more when the transfer ends, so even
+     * multi-GB copies make only a few hundred calls.
+     */
+    @FunctionalInterface
+    public interface TransferListener {
+        /**
+         * @param transferred bytes transferred so far
+         * @param total bytes expected, or {@code -1} when unknown
+         * @param bytesPerSecond average throughput since the transfer started
+         */
+        void onProgress(long transferred, long total, long bytesPerSecond);
+    }
+
+    // PER-TRANSFER PROGRESS BOOKKEEPING; A NO-OP WITHOUT A LISTENER
+    private static final class Transfer {
+        private final long total;
+        private final TransferListener listener;
+        private final long start = System.nanoTime();
+        private long transferred;
+        private long reported = -1;
+
+        private Transfer(final long total, final TransferListener listener) {
+            this.total = total;
+            this.listener = listener;
+        }
+
+        // REPORTS ONCE PER TRANSFER_CHUNK CROSSED, HOWEVER SMALL THE STEPS
+        private void advance(final long bytes) {
+            final long before = this.transferred;
+            this.transferred += bytes;
+            if (this.listener != null && before / TRANSFER_CHUNK != this.transferred / TRANSFER_CHUNK) this.report();
+        }
+
+        private void done() {
+            if (this.listener != null && this.reported != this.transferred) this.report();
+        }
+
+        private void report() {
+            this.reported = this.transferred;
+            final long nanos = Math.max(1, System.nanoTime() - this.start);
+            this.listener.onProgress(this.transferred, this.total, (long) (this.transferred * 1e9 / nanos));
+        }
+    }
+
+    /**
+     * Outcome of {@link #extractZip(Path, File)}.
+     *
+     * @param entries entries extracted, directories included
+     * @param bytes uncompressed bytes written
+     */
+    public record ExtractResult(int entries, long bytes) {}
 }
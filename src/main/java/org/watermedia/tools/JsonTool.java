@@ -1,9 +1,23 @@
 package org.watermedia.tools;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
 /**
  * Null-safe Gson accessors and lenient URL parsing shared by the platform handlers.
@@ -78,4 +92,265 @@ public final class JsonTool {
     public static URI uri(final JsonObject o, final String key) {
         return uri(str(o, key));
     }
+
+    /**
+     * Returns {@code e} as a string, or {@code null} when it is absent or JSON {@code null}.
+     * Element counterpart of {@link #str(JsonObject, String)} for values emitted by {@link #extract}.
+     */
+    public static String str(final JsonElement e) {
+        return (e == null || e.isJsonNull()) ? null : e.getAsString();
+    }
+
+    /**
+     * Returns {@code e} as a double, or {@code 0} when it is absent or JSON {@code null}.
+     */
+    public static double dbl(final JsonElement e) {
+        return (e == null || e.isJsonNull()) ? 0d : e.getAsDouble();
+    }
+
+    /**
+     * Returns {@code e} as an int, or {@code def} when it is absent or JSON {@code null}.
+     */
+    public static int intOr(final JsonElement e, final int def) {
+        return (e == null || e.isJsonNull()) ? def : e.getAsInt();
+    }
+
+    /**
+     * Convenience for {@link #uri(String) uri}({@link #str(JsonElement) str}(e)).
+     */
+    public static URI uri(final JsonElement e) {
+        return uri(str(e));
+    }
+
+    /**
+     * Compiles extraction paths for {@link #extract(Reader, Paths, BiConsumer)}. A path is a dot-separated
+     * list of steps, each an object key ({@code name}, or {@code *} for any key) optionally followed by array
+     * steps ({@code [*]} for every element, {@code [n]} for one); a path may start with an array step for
+     * top-level arrays. A trailing {@code {a,b}} projection emits matched objects with only those keys.
+     * <p>
+     * Examples: {@code tag_name}, {@code assets[*].browser_download_url},
+     * {@code assets[*]{name,size,browser_download_url}}, {@code [0].items[*].id}.
+     *
+     * @throws IllegalArgumentException on a malformed path
+     */
+    public static Paths paths(final String... paths) {
+        return new Paths(paths);
+    }
+
+    /**
+     * Streams the JSON document in {@code in} and hands {@code handler} every value found at one of
+     * {@code paths}, materializing only those values (or projected objects) and skipping everything else
+     * without building it. Values are emitted in document order together with the path that matched;
+     * JSON {@code null} values are emitted as {@link com.google.gson.JsonNull}, missing ones not at all, so
+     * the element accessors above keep the same null-tolerant semantics as their object counterparts.
+     *
+     * @param handler receives (path as given to {@link #paths}, value)
+     * @throws IOException on malformed JSON or a failed read
+     */
+    public static void extract(final Reader in, final Paths paths, final BiConsumer<String, JsonElement> handler) throws IOException {
+        final JsonReader reader = new JsonReader(in);
+        reader.setLenient(true); // SAME LENIENCY AS JsonParser.parseReader
+        final int[] all = new int[paths.steps.length];
+        for (int i = 0; i < all.length; i++) all[i] = i;
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            extractValue(reader, paths, all, all.length, 0, handler);
+        }
+    }
+
+    /**
+     * Convenience for {@link #extract(Reader, Paths, BiConsumer)} with paths compiled on the fly.
+     */
+    public static void extract(final Reader in, final BiConsumer<String, JsonElement> handler, final String... paths) throws IOException {
+        extract(in, paths(paths), handler);
+    }
+
+    // active[0..count) ARE THE PATHS WHOSE FIRST depth STEPS LED HERE
+    private static void extractValue(final JsonReader reader, final Paths paths, final int[] active, final int count,
+                                     final int depth, final BiConsumer<String, JsonElement> handler) throws IOException {
+        boolean complete = false, continuing = false, projectedOnly = true;
+        for (int i = 0; i < count; i++) {
+            final Step[] steps = paths.steps[active[i]];
+            if (steps.length == depth) {
+                complete = true;
+                projectedOnly &= paths.projections[active[i]] != null;
+            } else {
+                continuing = true;
+            }
+        }
+
+        if (complete) {
+            // A MATCH: BUILD THIS VALUE (ONLY THE PROJECTED KEYS WHEN THAT IS ALL ANY PATH NEEDS)
+            final JsonElement value = projectedOnly && !continuing && reader.peek() == JsonToken.BEGIN_OBJECT
+                    ? readProjected(reader, paths, active, count)
+                    : parseValue(reader);
+            for (int i = 0; i < count; i++) {
+                emitTree(value, paths, active[i], depth, handler);
+            }
+            return;
+        }
+
+        final JsonToken token = reader.peek();
+        if (!continuing || (token != JsonToken.BEGIN_OBJECT && token != JsonToken.BEGIN_ARRAY)) {
+            reader.skipValue();
+            return;
+        }
+
+        final int[] next = new int[count];
+        if (token == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                int n = 0;
+                for (int i = 0; i < count; i++) {
+                    if (paths.steps[active[i]][depth].matches(name)) next[n++] = active[i];
+                }
+                if (n == 0) reader.skipValue();
+                else extractValue(reader, paths, next, n, depth + 1, handler);
+            }
+            reader.endObject();
+        } else {
+            reader.beginArray();
+            for (int index = 0; reader.hasNext(); index++) {
+                int n = 0;
+                for (int i = 0; i < count; i++) {
+                    if (paths.steps[active[i]][depth].matches(index)) next[n++] = active[i];
+                }
+                if (n == 0) reader.skipValue();
+                else extractValue(reader, paths, next, n, depth + 1, handler);
+            }
+            reader.endArray();
+        }
+    }
+
+    // READS AN OBJECT KEEPING ONLY THE KEYS PROJECTED BY ANY OF THE ACTIVE PATHS
+    private static JsonObject readProjected(final JsonReader reader, final Paths paths, final int[] active, final int count) throws IOException {
+        final JsonObject object = new JsonObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            boolean wanted = false;
+            for (int i = 0; i < count && !wanted; i++) {
+                wanted = paths.projections[active[i]].contains(name);
+            }
+            if (wanted) object.add(name, parseValue(reader));
+            else reader.skipValue();
+        }
+        reader.endObject();
+        return object;
+    }
+
+    // JsonParser REPORTS MALFORMED INPUT AS AN UNCHECKED JsonParseException; extract PROMISES AN IOException
+    private static JsonElement parseValue(final JsonReader reader) throws IOException {
+        final String at = reader.getPath();
+        try {
+            return JsonParser.parseReader(reader);
+        } catch (final JsonIOException e) {
+            if (e.getCause() instanceof IOException io) throw io; // A FAILED READ, NOT BAD JSON
+            throw new IOException("Failed to read JSON at " + at, e);
+        } catch (final JsonParseException e) {
+            throw new IOException("Malformed JSON at " + at + ": " + e.getMessage(), e);
+        }
+    }
+
+    // WALKS THE REST OF path OVER AN ALREADY MATERIALIZED VALUE (WHEN ONE PATH ENDS INSIDE ANOTHER'S MATCH)
+    private static void emitTree(final JsonElement value, final Paths paths, final int path, final int depth,
+                                 final BiConsumer<String, JsonElement> handler) {
+        final Step[] steps = paths.steps[path];
+        if (depth == steps.length) {
+            final Set<String> projection = paths.projections[path];
+            if (projection != null && value.isJsonObject()) {
+                final JsonObject projected = new JsonObject();
+                for (final Map.Entry<String, JsonElement> e: value.getAsJsonObject().entrySet()) {
+                    if (projection.contains(e.getKey())) projected.add(e.getKey(), e.getValue());
+                }
+                handler.accept(paths.sources[path], projected);
+            } else {
+                handler.accept(paths.sources[path], value);
+            }
+            return;
+        }
+        final Step step = steps[depth];
+        if (value.isJsonObject()) {
+            for (final Map.Entry<String, JsonElement> e: value.getAsJsonObject().entrySet()) {
+                if (step.matches(e.getKey())) emitTree(e.getValue(), paths, path, depth + 1, handler);
+            }
+        } else if (value.isJsonArray()) {
+            final JsonArray array = value.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                if (step.matches(i)) emitTree(array.get(i), paths, path, depth + 1, handler);
+            }
+        }
+    }
+
+    /**
+     * Compiled extraction paths; immutable and reusable across documents and threads.
+     * @see #paths(String...)
+     */
+    public static final class Paths {
+        private final String[] sources;
+        private final Step[][] steps;
+        private final Set<String>[] projections;
+
+        @SuppressWarnings("unchecked")
+        private Paths(final String... paths) {
+            this.sources = paths.clone();
+            this.steps = new Step[paths.length][];
+            this.projections = (Set<String>[]) new Set<?>[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                String path = paths[i];
+                final int brace = path.indexOf('{');
+                if (brace >= 0) {
+                    if (!path.endsWith("}")) throw new IllegalArgumentException("Unterminated projection: " + paths[i]);
+                    final Set<String> keys = new HashSet<>();
+                    for (final String key: path.substring(brace + 1, path.length() - 1).split(",")) {
+                        if (!key.isBlank()) keys.add(key.trim());
+                    }
+                    this.projections[i] = keys;
+                    path = path.substring(0, brace);
+                }
+                this.steps[i] = parse(path, paths[i]);
+            }
+        }
+
+        private static Step[] parse(final String path, final String source) {
+            final List<Step> steps = new ArrayList<>();
+            int i = 0;
+            while (i < path.length()) {
+                final char c = path.charAt(i);
+                if (c == '[') {
+                    final int end = path.indexOf(']', i);
+                    if (end < 0) throw new IllegalArgumentException("Unterminated index: " + source);
+                    final String index = path.substring(i + 1, end).trim();
+                    if (index.equals("*")) {
+                        steps.add(new Step(null, -1));
+                    } else {
+                        final int n = DataTool.toInt(index, -1);
+                        if (n < 0) throw new IllegalArgumentException("Invalid index '" + index + "': " + source);
+                        steps.add(new Step(null, n));
+                    }
+                    i = end + 1;
+                } else if (c == '.') {
+                    i++;
+                } else {
+                    int end = i;
+                    while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') end++;
+                    final String name = path.substring(i, end);
+                    steps.add(new Step(name.equals("*") ? "" : name, -1));
+                    i = end;
+                }
+            }
+            return steps.toArray(new Step[0]);
+        }
+    }
+
+    // ONE PATH STEP: key == null IS AN ARRAY STEP (index -1 MEANS EVERY ELEMENT); key "" IS ANY OBJECT KEY
+    private record Step(String key, int index) {
+        private boolean matches(final String name) {
+            return this.key != null && (this.key.isEmpty() || this.key.equals(name));
+        }
+
+        private boolean matches(final int i) {
+            return this.key == null && (this.index < 0 || this.index == i);
+        }
+    }
 }
@@ -1,5 +1,316 @@
 package org.watermedia.tools;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single entry point for off-heap memory. Every direct buffer handed out by the tools is allocated here,
+ * tagged with its owner, counted against a configurable budget and freed deterministically on
+ * {@link #free(ByteBuffer)} instead of whenever the GC gets around to its cleaner.
+ * <p>
+ * Buffers that are never freed are still accounted for: once collected, their bytes are returned to the
+ * budget and counted as {@code collected} in the owner's {@link Usage usage}.
+ */
 public class MemTool {
+    private static final AtomicLong LIVE = new AtomicLong();
+    private static final AtomicLong PEAK = new AtomicLong();
+    private static volatile long budget = Long.MAX_VALUE;
+
+    private static final ConcurrentHashMap<String, Counter> TAGS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, Allocation> ALLOCATIONS = new ConcurrentHashMap<>(); // BUCKETED BY IDENTITY HASH
+    private static final ReferenceQueue<ByteBuffer> COLLECTED = new ReferenceQueue<>();
+
+    // sun.misc.Unsafe#invokeCleaner(ByteBuffer), OR null WHEN THE RUNTIME HIDES IT (FREEING THEN FALLS BACK TO GC)
+    private static final MethodHandle INVOKE_CLEANER = findInvokeCleaner();
+
+    /**
+     * Allocates a tracked direct buffer of exactly {@code bytes} bytes.
+     *
+     * @param tag owner reported in {@link #snapshot()} (e.g. the calling tool)
+     * @param bytes size in bytes
+     * @return a zeroed, big-endian direct buffer
+     * @throws BudgetExceededException if the allocation would take live off-heap memory past the budget
+     */
+    public static ByteBuffer allocate(final String tag, final int bytes) {
+        Objects.requireNonNull(tag, "Tag cannot be null");
+        if (bytes < 0) throw new IllegalArgumentException("Size cannot be negative");
+
+        drainCollected();
+        reserve(tag, bytes);
+        final ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.allocateDirect(bytes);
+        } catch (final OutOfMemoryError e) {
+            unreserve(bytes);
+            throw new BudgetExceededException("JVM direct memory exhausted allocating " + bytes + " bytes for " + tag + " (" + LIVE.get() + " live)", e);
+        }
+
+        final Counter counter = TAGS.computeIfAbsent(tag, Counter::new);
+        counter.live.addAndGet(bytes);
+        counter.count.incrementAndGet();
+        counter.allocated.incrementAndGet();
+        counter.peak.accumulateAndGet(counter.live.get(), Math::max);
+
+        final Allocation allocation = new Allocation(buffer, counter, bytes);
+        ALLOCATIONS.compute(allocation.hash, (k, head) -> {
+            allocation.next = head;
+            return allocation;
+        });
+        return buffer;
+    }
+
+    /**
+     * Frees a buffer returned by {@link #allocate(String, int)} right away. The buffer (and every slice or
+     * duplicate of it) must not be touched afterwards. Only the exact instance returned by {@code allocate} is
+     * freed, and never while a pool such as {@link BufferTool} holds it, as it may be handed to someone else.
+     *
+     * @param buffer the exact buffer instance returned by {@code allocate}; {@code null} is ignored
+     * @return {@code true} if it was freed, {@code false} if it is not tracked here, was already freed or is pooled
+     */
+    public static boolean free(final ByteBuffer buffer) {
+        if (buffer == null) return false;
+        final Allocation allocation = remove(System.identityHashCode(buffer), null, buffer);
+        if (allocation == null) return false;
+
+        release(allocation, false);
+        if (INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invokeExact(buffer);
+            } catch (final Throwable e) {
+                throw new IllegalStateException("Failed to free direct buffer", e);
+            }
+        }
+        return true;
+    }
+
+    // OWNERSHIP FLAG FOR POOLS: MOVES A LIVE BUFFER ALLOCATED UNDER tag INTO (pooled) OR OUT OF THE POOLED
+    // STATE; false IF IT IS NOT ONE OF tag's LIVE BUFFERS OR IS ALREADY IN THAT STATE
+    static boolean pooled(final ByteBuffer buffer, final String tag, final boolean pooled) {
+        final boolean[] moved = new boolean[1];
+        ALLOCATIONS.computeIfPresent(System.identityHashCode(buffer), (k, head) -> {
+            for (Allocation node = head; node != null; node = node.next) {
+                if (node.refersTo(buffer)) {
+                    if (node.counter.tag.equals(tag) && node.pooled != pooled) {
+                        node.pooled = pooled;
+                        moved[0] = true;
+                    }
+                    break;
+                }
+            }
+            return head;
+        });
+        return moved[0];
+    }
+
+    /**
+     * Unmaps a {@link MappedByteBuffer} right away instead of when it is collected, releasing its address
+     * space (and, on Windows, the lock it holds on the file). The buffer must not be touched afterwards.
+     * Falls back to leaving it to the GC when the runtime does not allow this.
+     */
+    public static void unmap(final MappedByteBuffer buffer) {
+        if (buffer == null || INVOKE_CLEANER == null) return;
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (final Throwable e) {
+            throw new IllegalStateException("Failed to unmap buffer", e);
+        }
+    }
+
+    /**
+     * Sets the maximum live off-heap bytes; allocations past it throw {@link BudgetExceededException}
+     * instead of running the JVM out of direct memory. Lowering it below the live bytes frees nothing.
+     */
+    public static void budget(final long bytes) {
+        if (bytes < 0) throw new IllegalArgumentException("Budget cannot be negative");
+        budget = bytes;
+    }
+
+    public static long budget() {
+        return budget;
+    }
+
+    /**
+     * @return off-heap bytes currently allocated through this tool
+     */
+    public static long liveBytes() {
+        drainCollected();
+        return LIVE.get();
+    }
+
+    /**
+     * @return off-heap bytes currently allocated under {@code tag}
+     */
+    public static long liveBytes(final String tag) {
+        drainCollected();
+        final Counter counter = TAGS.get(tag);
+        return counter == null ? 0 : counter.live.get();
+    }
+
+    /**
+     * Point-in-time copy of the off-heap usage, for logging or exporting to metrics.
+     */
+    public static Snapshot snapshot() {
+        drainCollected();
+        final Map<String, Usage> tags = new TreeMap<>();
+        for (final Counter c: TAGS.values()) {
+            tags.put(c.tag, new Usage(c.tag, c.live.get(), c.count.get(), c.peak.get(), c.allocated.get(), c.freed.get(), c.collected.get()));
+        }
+        return new Snapshot(LIVE.get(), PEAK.get(), budget, Collections.unmodifiableMap(tags));
+    }
+
+    private static void reserve(final String tag, final int bytes) {
+        for (boolean retried = false;;) {
+            final long live = LIVE.get();
+            final long next = live + bytes;
+            if (next > budget) {
+                // COLLECTED BUFFERS MAY NOT HAVE BEEN DRAINED YET; ONE MORE LOOK BEFORE FAILING
+                if (!retried && drainCollected() > 0) {
+                    retried = true;
+                    continue;
+                }
+                throw new BudgetExceededException("Off-heap budget exceeded allocating " + bytes + " bytes for " + tag + " (" + live + "/" + budget + " live)");
+            }
+            if (LIVE.compareAndSet(live, next)) {
+                PEAK.accumulateAndGet(next, Math::max);
+                return;
+            }
+        }
+    }
+
+    private static void unreserve(final long bytes) {
+        LIVE.addAndGet(-bytes);
+    }
+
+    private static void release(final Allocation allocation, final boolean collected) {
+        unreserve(allocation.bytes);
+        allocation.counter.live.addAndGet(-allocation.bytes);
+        allocation.counter.count.decrementAndGet();
+        (collected ? allocation.counter.collected : allocation.counter.freed).incrementAndGet();
+    }
+
+    // ACCOUNTS FOR BUFFERS THE GC COLLECTED WITHOUT AN EXPLICIT free; RETURNS HOW MANY WERE FOUND
+    private static int drainCollected() {
+        int count = 0;
+        Reference<? extends ByteBuffer> ref;
+        while ((ref = COLLECTED.poll()) != null) {
+            final Allocation allocation = (Allocation) ref;
+            if (remove(allocation.hash, allocation, null) != null) {
+                release(allocation, true);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // UNLINKS THE NODE THAT IS allocation OR REFERS TO buffer (UNLESS POOLED) FROM ITS BUCKET
+    private static Allocation remove(final int hash, final Allocation allocation, final ByteBuffer buffer) {
+        final Allocation[] found = new Allocation[1];
+        ALLOCATIONS.computeIfPresent(hash, (k, head) -> {
+            Allocation prev = null;
+            for (Allocation node = head; node != null; prev = node, node = node.next) {
+                if (node == allocation || (buffer != null && node.refersTo(buffer))) {
+                    if (node.pooled && allocation == null) return head; // OWNED BY A POOL, NOT BY THE CALLER
+                    found[0] = node;
+                    node.clear(); // A CLEARED REFERENCE IS NEVER ENQUEUED
+                    if (prev == null) return node.next;
+                    prev.next = node.next;
+                    return head;
+                }
+            }
+            return head;
+        });
+        return found[0];
+    }
+
+    private static MethodHandle findInvokeCleaner() {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (final Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * Thrown when an allocation would exceed the {@link #budget(long) off-heap budget}.
+     */
+    public static class BudgetExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public BudgetExceededException(final String message) {
+            super(message);
+        }
+
+        public BudgetExceededException(final String message, final Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Off-heap usage of the whole process (as seen by this tool) at one point in time.
+     *
+     * @param liveBytes bytes currently allocated
+     * @param peakBytes highest {@code liveBytes} ever reached
+     * @param budget configured budget, {@link Long#MAX_VALUE} when unlimited
+     * @param tags usage per tag, sorted by tag
+     */
+    public record Snapshot(long liveBytes, long peakBytes, long budget, Map<String, Usage> tags) {}
+
+    /**
+     * Off-heap usage of one tag.
+     *
+     * @param liveBytes bytes currently allocated
+     * @param liveCount buffers currently allocated
+     * @param peakBytes highest {@code liveBytes} ever reached
+     * @param allocated buffers allocated so far
+     * @param freed buffers explicitly freed so far
+     * @param collected buffers reclaimed by the GC without an explicit free (usually a leak)
+     */
+    public record Usage(String tag, long liveBytes, long liveCount, long peakBytes, long allocated, long freed, long collected) {}
+
+    private static final class Counter {
+        private final String tag;
+        private final AtomicLong live = new AtomicLong();
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong peak = new AtomicLong();
+        private final AtomicLong allocated = new AtomicLong();
+        private final AtomicLong freed = new AtomicLong();
+        private final AtomicLong collected = new AtomicLong();
+
+        private Counter(final String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static final class Allocation extends PhantomReference<ByteBuffer> {
+        private final int hash;
+        private final Counter counter;
+        private final int bytes;
+        private Allocation next; // GUARDED BY THE BUCKET'S compute
+        private boolean pooled; // GUARDED BY THE BUCKET'S compute
 
+        private Allocation(final ByteBuffer buffer, final Counter counter, final int bytes) {
+            super(buffer, COLLECTED);
+            this.hash = System.identityHashCode(buffer);
+            this.counter = counter;
+            this.bytes = bytes;
+        }
+    }
 }
@@ -1,61 +1,258 @@
 package org.watermedia.tools;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32C;
 
 /**
- * Small HTTP(S) helper built on the JDK {@link HttpURLConnection}, with no external dependencies so it can
- * live in the shared tools module. Follows same-protocol (https&rarr;https) redirects, which is all the
- * GitHub/Codeberg endpoints it is used for ever need.
+ * Small HTTP(S) helper built on the JDK HTTP stack, with no external dependencies so it can live in the
+ * shared tools module. GETs (blocking and async) share one pooled HTTP/2 {@link HttpClient}; file downloads
+ * use {@link HttpURLConnection} streams. Follows redirects except https&rarr;http downgrades, which covers
+ * all the GitHub/Codeberg endpoints it is used for.
  */
 public class NetTool {
     private static final String USER_AGENT = "WaterMedia/3.0.0"; // GITHUB'S API 403s WITHOUT A User-Agent
     private static final int CONNECT_TIMEOUT_MS = 30_000;
     private static final int READ_TIMEOUT_MS = 60_000; // PER-READ SOCKET TIMEOUT: BOUNDS A STALLED STREAM
+    private static final int AWAIT_TIMEOUT_MS = 5 * 60_000; // HARD CAP ON A BLOCKING get, ON TOP OF THE IDLE TIMEOUTS
     private static final int MAX_RESPONSE_BYTES = 16 * 1024 * 1024; // BOUND IN-MEMORY GET RESPONSES (JSON/TEXT)
+    private static final int DEFAULT_SEGMENTS = 4;
+    public static final long MIN_SEGMENTED_BYTES = 8 * 1024 * 1024; // BELOW THIS, EXTRA HANDSHAKES COST MORE THAN THEY SAVE
+    private static volatile ResponseCache responseCache; // null WHEN CACHING IS OFF
+    private static volatile int readTimeoutMs = READ_TIMEOUT_MS;
 
     // GETs url AND RETURNS THE RESPONSE BODY AS A UTF-8 STRING (FOR SMALL JSON/TEXT — E.G. A RELEASES API
     // PAYLOAD). FOLLOWS REDIRECTS; THROWS ON A NON-200 STATUS OR A BODY LARGER THAN MAX_RESPONSE_BYTES.
+    // BLOCKING FRONT OF getAsync, SO IT SHARES ITS POOLED CONNECTIONS AND THE RESPONSE CACHE.
     public static String get(final String url) throws IOException {
-        final HttpURLConnection conn = (HttpURLConnection) URI.create(url).toURL().openConnection();
-        conn.setRequestProperty("User-Agent", USER_AGENT);
-        conn.setRequestProperty("Accept", "application/json");
-        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-        conn.setReadTimeout(READ_TIMEOUT_MS);
-        conn.setInstanceFollowRedirects(true);
-        try {
-            final int code = conn.getResponseCode();
-            if (code != 200) {
-                throw new IOException("GET failed (HTTP " + code + "): " + url);
-            }
-            try (final InputStream in = conn.getInputStream()) {
-                return new String(IOTool.readLimited(in, MAX_RESPONSE_BYTES, conn.getContentLengthLong()), StandardCharsets.UTF_8);
+        return await(getAsync(url), url);
+    }
+
+    // SAME AS get(url), BUT A CACHED RESPONSE YOUNGER THAN maxAge IS RETURNED WITHOUT A REQUEST
+    public static String get(final String url, final Duration maxAge) throws IOException {
+        return await(getAsync(url, maxAge), url);
+    }
+
+    /**
+     * Asynchronous {@link #get(String)}: GETs {@code url} over the shared HTTP/2 client, reusing pooled
+     * connections, and completes with the body as a UTF-8 string. Many of these can be in flight at once
+     * without holding a thread each. With a {@link #cache(Path, long) response cache} configured, a cached
+     * body is revalidated with {@code If-None-Match}/{@code If-Modified-Since} and served on a 304.
+     *
+     * @return a future failing with an {@link IOException} on a non-200 status, a body larger than
+     * {@value #MAX_RESPONSE_BYTES} bytes or a network error
+     */
+    public static CompletableFuture<String> getAsync(final String url) {
+        return getAsync(url, null);
+    }
+
+    /**
+     * Same as {@link #getAsync(String)}, but a cached response stored or revalidated less than
+     * {@code maxAge} ago completes immediately without touching the network.
+     *
+     * @param maxAge how long a cached response is trusted as-is; {@code null} or zero always revalidates
+     */
+    public static CompletableFuture<String> getAsync(final String url, final Duration maxAge) {
+        final ResponseCache cache = responseCache;
+        final ResponseCache.Entry cached = cache == null ? null : cache.load(url);
+        if (cached != null && maxAge != null && cached.age().compareTo(maxAge) < 0) {
+            final byte[] body = cache.body(cached);
+            if (body != null) {
+                cache.used(cached);
+                return CompletableFuture.completedFuture(new String(body, StandardCharsets.UTF_8));
             }
-        } finally {
-            conn.disconnect();
         }
+        return fetch(url, cache, cached);
+    }
+
+    // GETs url, CONDITIONALLY ON cached WHEN THERE IS ONE
+    private static CompletableFuture<String> fetch(final String url, final ResponseCache cache, final ResponseCache.Entry cached) {
+        final HttpRequest.Builder builder = request(url)
+                .header("Accept", "application/json")
+                .timeout(Duration.ofMillis(readTimeoutMs));
+        if (cached != null) {
+            if (cached.etag != null) builder.header("If-None-Match", cached.etag);
+            if (cached.lastModified != null) builder.header("If-Modified-Since", cached.lastModified);
+        }
+        return Http.CLIENT.sendAsync(builder.build(), info -> info.statusCode() == 200
+                        ? new IdleTimeoutSubscriber<>(new LimitedSubscriber(MAX_RESPONSE_BYTES, info.headers().firstValueAsLong("Content-Length").orElse(-1)))
+                        : HttpResponse.BodySubscribers.replacing(null))
+                .thenCompose(response -> {
+                    if (response.statusCode() == 304 && cached != null) {
+                        final byte[] body = cache.body(cached);
+                        if (body == null) {
+                            // VALIDATED A COPY WE CAN NO LONGER READ: FORGET IT AND ASK FOR THE FULL RESPONSE
+                            cache.drop(cached);
+                            return fetch(url, cache, null);
+                        }
+                        cache.revalidated(cached);
+                        return CompletableFuture.completedFuture(new String(body, StandardCharsets.UTF_8));
+                    }
+                    if (response.statusCode() != 200) {
+                        throw new CompletionException(new IOException("GET failed (HTTP " + response.statusCode() + "): " + url));
+                    }
+                    if (cache != null) {
+                        cache.store(url, response.body(), response.headers().firstValue("ETag").orElse(null),
+                                response.headers().firstValue("Last-Modified").orElse(null));
+                    }
+                    return CompletableFuture.completedFuture(new String(response.body(), StandardCharsets.UTF_8));
+                });
+    }
+
+    /**
+     * Sets how long a request may go without receiving data before it fails with an {@link HttpTimeoutException}
+     * ({@link java.net.SocketTimeoutException} for the blocking downloads): the wait for the response headers,
+     * and the longest gap between two chunks of the body. 60 seconds by default.
+     */
+    public static void readTimeout(final Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) throw new IllegalArgumentException("Timeout must be positive");
+        readTimeoutMs = (int) Math.min(Integer.MAX_VALUE, timeout.toMillis());
+    }
+
+    public static Duration readTimeout() {
+        return Duration.ofMillis(readTimeoutMs);
+    }
+
+    /**
+     * Enables the on-disk response cache for {@link #get(String)}/{@link #getAsync(String)}, keyed by URL.
+     * Once its files exceed {@code maxBytes}, the least recently used responses are evicted.
+     *
+     * @param dir cache directory, created if missing; {@code null} disables caching
+     * @param maxBytes size bound for the cached files
+     */
+    public static void cache(final Path dir, final long maxBytes) throws IOException {
+        if (dir == null) {
+            responseCache = null;
+            return;
+        }
+        if (maxBytes < 0) throw new IllegalArgumentException("Cache size cannot be negative");
+        Files.createDirectories(dir);
+        responseCache = new ResponseCache(dir, maxBytes);
+    }
+
+    /**
+     * Asynchronous single-stream {@link #download(String, Path, int) download} over the shared client.
+     * Keeps the blocking variant's guarantees: a non-200 status, a failed write or a size mismatch against
+     * {@code Content-Length} fails the future and deletes the half-written {@code dest}.
+     *
+     * @return a future completing with {@code dest}
+     */
+    public static CompletableFuture<Path> downloadAsync(final String url, final Path dest) {
+        final HttpRequest request = request(url)
+                .timeout(Duration.ofMillis(readTimeoutMs))
+                .build();
+        final AtomicBoolean writing = new AtomicBoolean(); // ONLY A 200 TOUCHES dest, SO ONLY THEN IS THERE ANYTHING TO DELETE
+        return Http.CLIENT.sendAsync(request, info -> {
+                    if (info.statusCode() != 200) return HttpResponse.BodySubscribers.<Path>replacing(null);
+                    writing.set(true);
+                    return new IdleTimeoutSubscriber<>(HttpResponse.BodySubscribers.ofFile(dest));
+                })
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new CompletionException(new IOException("Download failed (HTTP " + response.statusCode() + "): " + url));
+                    }
+                    final long expected = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+                    if (expected >= 0) {
+                        final long actual;
+                        try {
+                            actual = Files.size(dest);
+                        } catch (final IOException e) {
+                            throw new CompletionException(e);
+                        }
+                        if (actual != expected) {
+                            throw new CompletionException(new IOException("Truncated download (" + actual + "/" + expected + " bytes): " + url));
+                        }
+                    }
+                    return dest;
+                })
+                .whenComplete((path, error) -> {
+                    if (error != null && writing.get()) {
+                        try {
+                            Files.deleteIfExists(dest);
+                        } catch (final IOException ignored) {}
+                    }
+                });
     }
 
     // DOWNLOADS url INTO dest, FOLLOWING REDIRECTS. THROWS ON A NON-200 STATUS, A FAILED WRITE, OR A
     // SIZE MISMATCH AGAINST Content-Length (TRUNCATION); DELETES A HALF-WRITTEN FILE SO A RETRY
-    // RE-DOWNLOADS INSTEAD OF TRUSTING A TRUNCATED FILE.
+    // RE-DOWNLOADS INSTEAD OF TRUSTING A TRUNCATED FILE. LARGE FILES ON SERVERS ADVERTISING RANGE
+    // SUPPORT ARE FETCHED IN DEFAULT_SEGMENTS PARALLEL SEGMENTS (SEE download(String, Path, int)).
     public static void download(final String url, final Path dest) throws IOException {
-        final HttpURLConnection conn = (HttpURLConnection) URI.create(url).toURL().openConnection();
-        conn.setRequestProperty("User-Agent", USER_AGENT);
-        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-        conn.setReadTimeout(READ_TIMEOUT_MS);
-        conn.setInstanceFollowRedirects(true);
+        download(url, dest, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Downloads {@code url} into {@code dest}, splitting it into up to {@code segments} concurrent HTTP
+     * Range requests when the server sends {@code Accept-Ranges: bytes} and the file is at least
+     * {@value #MIN_SEGMENTED_BYTES} bytes; otherwise it behaves like a plain single-stream download.
+     * <p>
+     * Segments are written at their offsets into {@code dest.part}, and each completed segment is recorded
+     * in {@code dest.part.state}. A failed segmented download keeps both, so the next call for the same
+     * URL resumes from the completed segments as long as the server reports the same length and
+     * {@code ETag}/{@code Last-Modified} and {@code dest.part} is still the full-size file they were written
+     * to. Without a validator nothing can be resumed, so a failure deletes {@code dest.part}. The finished
+     * file is checked against {@code Content-Length} and then moved into place.
+     *
+     * @param segments maximum concurrent connections; {@code 1} disables segmenting
+     * @throws IOException on a non-200/206 status, a failed write or a truncated transfer
+     */
+    public static void download(final String url, final Path dest, final int segments) throws IOException {
+        if (segments < 1) throw new IllegalArgumentException("Segments must be positive");
+        final HttpURLConnection conn = open(URI.create(url).toURL());
         try {
             final int code = conn.getResponseCode();
             if (code != 200) {
                 throw new IOException("Download failed (HTTP " + code + "): " + url);
             }
             final long expected = conn.getContentLengthLong();
+            if (segments > 1 && expected >= MIN_SEGMENTED_BYTES && "bytes".equalsIgnoreCase(conn.getHeaderField("Accept-Ranges"))) {
+                downloadSegmented(conn, url, dest, expected, segments);
+                return;
+            }
             // IOTool.write CLOSES THE STREAM AND RETURNS false ON AN IO ERROR
             if (!IOTool.write(conn.getInputStream(), dest.toFile())) {
                 Files.deleteIfExists(dest);
@@ -72,4 +269,583 @@ public class NetTool {
             conn.disconnect();
         }
     }
+
+    /**
+     * Downloads {@code url} and publishes it at {@code dest} only once it is known good. Bytes are hashed
+     * while they stream into a temporary file next to {@code dest}; the length is checked against
+     * {@code Content-Length} and the digest against {@code sha256} before the file is moved into place with
+     * {@link IOTool#move(Path, Path)}, so the data is read exactly once and readers never see a partial or
+     * corrupt {@code dest}. Always a single stream, since segments would arrive out of hashing order.
+     *
+     * @param sha256 expected SHA-256 as hex (case-insensitive)
+     * @throws IOException on a non-200 status, a failed write, a truncated transfer or a digest mismatch;
+     * the temporary file is deleted and any existing {@code dest} is left untouched
+     */
+    public static void download(final String url, final Path dest, final String sha256) throws IOException {
+        Objects.requireNonNull(sha256, "Expected SHA-256 cannot be null");
+        final HttpURLConnection conn = open(URI.create(url).toURL());
+        Path tmp = null;
+        try {
+            final int code = conn.getResponseCode();
+            if (code != 200) {
+                throw new IOException("Download failed (HTTP " + code + "): " + url);
+            }
+            final long expected = conn.getContentLengthLong();
+            // SAME DIRECTORY, SO THE MOVE STAYS ATOMIC. NOT createTempFile: ITS OWNER-ONLY PERMISSIONS WOULD CARRY
+            // OVER TO dest, WHILE createFile GIVES THE DEFAULT ONES ANY OTHER NEW FILE GETS
+            tmp = Files.createFile(dest.toAbsolutePath().resolveSibling(dest.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp"));
+
+            final MessageDigest digest = IOTool.sha256Digest();
+            long actual = 0;
+            try (final InputStream in = conn.getInputStream(); final OutputStream out = Files.newOutputStream(tmp)) {
+                final byte[] buffer = new byte[IOTool.BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                    actual += read;
+                }
+            }
+            if (expected >= 0 && actual != expected) {
+                throw new IOException("Truncated download (" + actual + "/" + expected + " bytes): " + url);
+            }
+            final String hash = IOTool.hex(digest.digest());
+            if (!sha256.equalsIgnoreCase(hash)) {
+                throw new IOException("SHA-256 mismatch for " + dest.getFileName() + " (expected " + sha256 + ", got " + hash + "): " + url);
+            }
+            IOTool.move(tmp, dest);
+        } catch (final IOException | RuntimeException e) {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (final IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    // THE FIRST CONNECTION (ALREADY STREAMING FROM BYTE 0) SERVES SEGMENT 0; THE OTHERS ARE RANGE REQUESTS
+    // AGAINST THE POST-REDIRECT URL SO SIGNED ASSET URLS ARE NOT RE-RESOLVED PER SEGMENT
+    private static void downloadSegmented(final HttpURLConnection first, final String url, final Path dest, final long length, final int segments) throws IOException {
+        final Path part = dest.resolveSibling(dest.getFileName() + ".part");
+        final Path statePath = dest.resolveSibling(dest.getFileName() + ".part.state");
+        final String validator = validator(first);
+        final SegmentState state = SegmentState.load(statePath, part, url, length, validator, segments);
+        if (state.done.isEmpty()) Files.deleteIfExists(part); // STALE OR FOREIGN PARTIAL DATA
+        try {
+            downloadSegments(first, url, part, length, state);
+        } catch (final IOException | RuntimeException e) {
+            if (!state.resumable()) { // NOTHING WILL EVER PICK IT UP AGAIN
+                try {
+                    Files.deleteIfExists(part);
+                } catch (final IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+
+        final long actual = Files.size(part);
+        if (actual != length) {
+            // SEGMENT BOOKKEEPING AND FILE DISAGREE; NOTHING HERE IS SAFE TO RESUME FROM
+            Files.deleteIfExists(part);
+            Files.deleteIfExists(statePath);
+            throw new IOException("Truncated download (" + actual + "/" + length + " bytes): " + url);
+        }
+        IOTool.move(part, dest);
+        Files.deleteIfExists(statePath);
+    }
+
+    private static void downloadSegments(final HttpURLConnection first, final String url, final Path part, final long length, final SegmentState state) throws IOException {
+        final URL source = first.getURL();
+        final int count = state.segments;
+        final long size = (length + count - 1) / count;
+        final ExecutorService executor = ThreadTool.createVirtualThreadPool("NetTool-Segment");
+        try (final FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (state.done.isEmpty()) {
+                // FULL SIZE FROM THE START, SO A RESUME CAN TELL AN INTACT .part FROM A TRUNCATED OR RECREATED ONE
+                if (channel.size() < length) channel.write(ByteBuffer.allocate(1), length - 1);
+                state.file(Files.readAttributes(part, BasicFileAttributes.class).fileKey());
+            }
+            final List<Future<?>> futures = new ArrayList<>(count);
+            for (int i = 1; i < count; i++) {
+                final int index = i;
+                final long from = index * size, to = Math.min(length, from + size);
+                if (from >= to || state.isDone(index)) continue;
+                futures.add(executor.submit(() -> {
+                    final HttpURLConnection conn = open(source);
+                    try {
+                        conn.setRequestProperty("Range", "bytes=" + from + "-" + (to - 1));
+                        final int code = conn.getResponseCode();
+                        if (code != 206) {
+                            throw new IOException("Range request failed (HTTP " + code + ", bytes " + from + "-" + (to - 1) + "): " + url);
+                        }
+                        try (final InputStream in = conn.getInputStream()) {
+                            writeRange(in, channel, from, to - from, url);
+                        }
+                    } finally {
+                        conn.disconnect();
+                    }
+                    channel.force(false); // ON DISK BEFORE IT IS RECORDED AS DONE
+                    state.markDone(index);
+                    return null;
+                }));
+            }
+            if (!state.isDone(0)) {
+                try (final InputStream in = first.getInputStream()) {
+                    writeRange(in, channel, 0, Math.min(size, length), url);
+                }
+                channel.force(false);
+                state.markDone(0);
+            }
+            for (final Future<?> future: futures) {
+                try {
+                    future.get();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Download interrupted: " + url);
+                } catch (final ExecutionException e) {
+                    if (e.getCause() instanceof IOException io) throw io;
+                    throw new IOException("Segment failed: " + url, e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // COPIES EXACTLY count BYTES FROM in TO channel AT position
+    private static void writeRange(final InputStream in, final FileChannel channel, final long position, final long count, final String url) throws IOException {
+        final byte[] buffer = new byte[IOTool.BUFFER_SIZE];
+        final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+        long written = 0;
+        while (written < count) {
+            final int read = in.read(buffer, 0, (int) Math.min(buffer.length, count - written));
+            if (read < 0) {
+                throw new IOException("Truncated segment (" + written + "/" + count + " bytes at " + position + "): " + url);
+            }
+            wrapped.clear().limit(read);
+            while (wrapped.hasRemaining()) {
+                written += channel.write(wrapped, position + written);
+            }
+        }
+    }
+
+    // IDENTIFIES THE REMOTE FILE VERSION, SO A RESUME NEVER STITCHES SEGMENTS OF TWO DIFFERENT FILES
+    private static String validator(final HttpURLConnection conn) {
+        final String etag = conn.getHeaderField("ETag");
+        if (etag != null && !etag.startsWith("W/")) return etag; // WEAK ETAGS DO NOT GUARANTEE BYTE EQUALITY
+        return conn.getHeaderField("Last-Modified");
+    }
+
+    private static HttpURLConnection open(final URL url) throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("User-Agent", USER_AGENT);
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        conn.setReadTimeout(readTimeoutMs);
+        conn.setInstanceFollowRedirects(true);
+        return conn;
+    }
+
+    private static HttpRequest.Builder request(final String url) {
+        return HttpRequest.newBuilder(URI.create(url)).header("User-Agent", USER_AGENT).GET();
+    }
+
+    // BLOCKS ON future FOR AT MOST AWAIT_TIMEOUT_MS, SURFACING ITS FAILURE AS THE IOException THE BLOCKING
+    // API HAS ALWAYS THROWN
+    private static <T> T await(final CompletableFuture<T> future, final String url) throws IOException {
+        try {
+            return future.get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            future.cancel(true);
+            throw new HttpTimeoutException("Request timed out after " + AWAIT_TIMEOUT_MS + " ms: " + url);
+        } catch (final InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request interrupted: " + url);
+        } catch (final ExecutionException e) {
+            final Throwable cause = unwrap(e);
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Request failed: " + url, cause);
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    // SHARED CLIENT, BUILT ON FIRST ASYNC USE. NORMAL REDIRECTS NEVER DOWNGRADE https TO http
+    private static final class Http {
+        private static final HttpClient CLIENT = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT_MS))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(ThreadTool.createVirtualThreadPool("NetTool-Http"))
+                .build();
+        private static final ScheduledExecutorService WATCHDOG = (ScheduledExecutorService) ThreadTool.createScheduledThreadPool("NetTool-Watchdog", 1, Thread.NORM_PRIORITY);
+    }
+
+    // FAILS THE BODY WITH AN HttpTimeoutException ONCE NO DATA HAS ARRIVED FOR readTimeoutMs, LIKE THE SOCKET
+    // READ TIMEOUT OF THE HttpURLConnection PATH; HttpRequest.timeout ONLY COVERS THE RESPONSE HEADERS.
+    // ONE WATCHDOG TASK PER TIMEOUT PERIOD, RE-ARMED FOR THE REMAINDER WHEN DATA CAME IN MEANWHILE
+    private static final class IdleTimeoutSubscriber<T> implements HttpResponse.BodySubscriber<T>, Runnable {
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeoutMs);
+        private volatile long lastActivity = System.nanoTime();
+        private Flow.Subscription subscription;
+        private ScheduledFuture<?> watchdog;
+        private boolean done; // GUARDED BY this, WHICH ALSO KEEPS THE SIGNALS TO delegate SERIAL
+
+        private IdleTimeoutSubscriber(final HttpResponse.BodySubscriber<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return this.delegate.getBody();
+        }
+
+        @Override
+        public synchronized void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            this.lastActivity = System.nanoTime();
+            this.watchdog = Http.WATCHDOG.schedule(this, this.timeoutNanos, TimeUnit.NANOSECONDS);
+            this.delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public synchronized void onNext(final List<ByteBuffer> items) {
+            this.lastActivity = System.nanoTime();
+            if (!this.done) this.delegate.onNext(items);
+        }
+
+        @Override
+        public synchronized void onError(final Throwable throwable) {
+            if (this.finish()) this.delegate.onError(throwable);
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            if (this.finish()) this.delegate.onComplete();
+        }
+
+        @Override
+        public synchronized void run() {
+            if (this.done || this.delegate.getBody().toCompletableFuture().isDone()) return; // E.G. CANCELLED OVER ITS LIMIT
+            final long idle = System.nanoTime() - this.lastActivity;
+            if (idle < this.timeoutNanos) {
+                this.watchdog = Http.WATCHDOG.schedule(this, this.timeoutNanos - idle, TimeUnit.NANOSECONDS);
+                return;
+            }
+            this.done = true;
+            this.subscription.cancel();
+            this.delegate.onError(new HttpTimeoutException("No data received for " + TimeUnit.NANOSECONDS.toMillis(idle) + " ms"));
+        }
+
+        private boolean finish() {
+            if (this.done) return false;
+            this.done = true;
+            if (this.watchdog != null) this.watchdog.cancel(false);
+            return true;
+        }
+    }
+
+    // COLLECTS A RESPONSE BODY IN MEMORY, CANCELLING THE STREAM AS SOON AS IT OUTGROWS max
+    private static final class LimitedSubscriber implements HttpResponse.BodySubscriber<byte[]> {
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        private final long max;
+        private final ByteArrayOutputStream out;
+        private Flow.Subscription subscription;
+        private long total;
+
+        private LimitedSubscriber(final long max, final long expected) {
+            this.max = max;
+            this.out = new ByteArrayOutputStream(expected > 0 && expected <= max ? (int) expected : IOTool.BUFFER_SIZE);
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return this.result;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(final List<ByteBuffer> items) {
+            for (final ByteBuffer item: items) {
+                this.total += item.remaining();
+                if (this.total > this.max) {
+                    this.subscription.cancel();
+                    this.result.completeExceptionally(new IOException("Failed to read input: exceeds limit (" + this.total + " > " + this.max + " bytes)"));
+                    return;
+                }
+                if (item.hasArray()) {
+                    this.out.write(item.array(), item.arrayOffset() + item.position(), item.remaining());
+                } else {
+                    final byte[] bytes = new byte[item.remaining()];
+                    item.get(bytes);
+                    this.out.write(bytes, 0, bytes.length);
+                }
+            }
+            this.subscription.request(1);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            this.result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            this.result.complete(this.out.toByteArray());
+        }
+    }
+
+    // ON-DISK GET CACHE: <sha256(url)>.body HOLDS THE PAYLOAD, <sha256(url)>.meta ITS VALIDATORS AND THE BODY'S
+    // CRC32C, SO A BODY AND META FROM TWO DIFFERENT STORES (A CRASH BETWEEN THEIR MOVES) NEVER PASS AS A PAIR.
+    // THE META FILE'S MTIME IS THE LAST USE, WHICH DRIVES LRU EVICTION. EVERY FAILURE DEGRADES TO A CACHE MISS
+    private static final class ResponseCache {
+        private final Path dir;
+        private final long maxBytes;
+
+        private ResponseCache(final Path dir, final long maxBytes) {
+            this.dir = dir;
+            this.maxBytes = maxBytes;
+        }
+
+        private Entry load(final String url) {
+            final Path meta = this.dir.resolve(key(url) + ".meta");
+            if (!Files.isRegularFile(meta)) return null;
+            final Properties props = new Properties();
+            try (final InputStream in = Files.newInputStream(meta)) {
+                props.load(in);
+            } catch (final IOException | IllegalArgumentException e) {
+                return null;
+            }
+            if (!url.equals(props.getProperty("url"))) return null; // HASH COLLISION OR FOREIGN FILE
+            return new Entry(key(url), url, props.getProperty("etag"), props.getProperty("lastModified"),
+                    DataTool.toLong(props.getProperty("validated"), 0), DataTool.toLong(props.getProperty("crc"), -1));
+        }
+
+        // THE CACHED PAYLOAD, OR null WHEN IT IS MISSING, UNREADABLE OR NOT THE ONE entry DESCRIBES
+        private byte[] body(final Entry entry) {
+            try {
+                final byte[] body = Files.readAllBytes(this.dir.resolve(entry.key + ".body"));
+                return crc(body) == entry.crc ? body : null;
+            } catch (final IOException e) {
+                return null;
+            }
+        }
+
+        // A 304 PROVES THE COPY STILL CURRENT: RESTART ITS max-age CLOCK
+        private void revalidated(final Entry entry) {
+            Path meta = null;
+            try {
+                meta = this.writeMeta(entry.key, entry.url, entry.etag, entry.lastModified, entry.crc);
+                IOTool.move(meta, this.dir.resolve(entry.key + ".meta"));
+                meta = null;
+            } catch (final IOException ignored) {
+            } finally {
+                deleteQuietly(meta);
+            }
+        }
+
+        private void drop(final Entry entry) {
+            try {
+                Files.deleteIfExists(this.dir.resolve(entry.key + ".meta")); // META FIRST: A BODY WITHOUT META IS NEVER SERVED
+                Files.deleteIfExists(this.dir.resolve(entry.key + ".body"));
+            } catch (final IOException ignored) {}
+        }
+
+        // SERVED WITHOUT REVALIDATION: ONLY BUMP ITS LRU POSITION
+        private void used(final Entry entry) {
+            try {
+                Files.setLastModifiedTime(this.dir.resolve(entry.key + ".meta"), FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (final IOException ignored) {}
+        }
+
+        // BOTH FILES ARE WRITTEN IN FULL BEFORE EITHER IS PUBLISHED, THEN MOVED INTO PLACE META LAST
+        private void store(final String url, final byte[] body, final String etag, final String lastModified) {
+            final String key = key(url);
+            Path bodyTmp = null, metaTmp = null;
+            try {
+                bodyTmp = Files.createTempFile(this.dir, key, ".tmp");
+                Files.write(bodyTmp, body);
+                metaTmp = this.writeMeta(key, url, etag, lastModified, crc(body));
+                IOTool.move(bodyTmp, this.dir.resolve(key + ".body"));
+                bodyTmp = null;
+                IOTool.move(metaTmp, this.dir.resolve(key + ".meta"));
+                metaTmp = null;
+                this.evict();
+            } catch (final IOException ignored) {
+            } finally {
+                deleteQuietly(bodyTmp);
+                deleteQuietly(metaTmp);
+            }
+        }
+
+        // WRITES THE META FILE TO A TEMPORARY FILE AND RETURNS IT, FOR THE CALLER TO MOVE INTO PLACE
+        private Path writeMeta(final String key, final String url, final String etag, final String lastModified, final long crc) throws IOException {
+            final Properties props = new Properties();
+            props.setProperty("url", url);
+            props.setProperty("validated", Long.toString(System.currentTimeMillis()));
+            props.setProperty("crc", Long.toString(crc));
+            if (etag != null) props.setProperty("etag", etag);
+            if (lastModified != null) props.setProperty("lastModified", lastModified);
+            final Path tmp = Files.createTempFile(this.dir, key, ".tmp");
+            try (final OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, null);
+            } catch (final IOException e) {
+                deleteQuietly(tmp);
+                throw e;
+            }
+            return tmp;
+        }
+
+        private static long crc(final byte[] body) {
+            final CRC32C crc = new CRC32C();
+            crc.update(body);
+            return crc.getValue();
+        }
+
+        private static void deleteQuietly(final Path file) {
+            if (file == null) return;
+            try {
+                Files.deleteIfExists(file);
+            } catch (final IOException ignored) {}
+        }
+
+        // DROPS THE LEAST RECENTLY USED ENTRIES UNTIL THE CACHE FITS maxBytes AGAIN
+        private void evict() throws IOException {
+            final List<Path> metas = new ArrayList<>();
+            long total = 0;
+            try (final var files = Files.newDirectoryStream(this.dir)) {
+                for (final Path file: files) {
+                    total += Files.size(file);
+                    if (file.getFileName().toString().endsWith(".meta")) metas.add(file);
+                }
+            }
+            if (total <= this.maxBytes) return;
+
+            final Map<Path, FileTime> used = new HashMap<>();
+            for (final Path meta: metas) used.put(meta, Files.getLastModifiedTime(meta));
+            metas.sort(Comparator.comparing(used::get));
+            for (final Path meta: metas) {
+                if (total <= this.maxBytes) break;
+                final String name = meta.getFileName().toString();
+                final Path body = meta.resolveSibling(name.substring(0, name.length() - ".meta".length()) + ".body");
+                total -= Files.exists(body) ? Files.size(body) : 0;
+                total -= Files.size(meta);
+                Files.deleteIfExists(meta); // META FIRST: A BODY WITHOUT META IS NEVER SERVED
+                Files.deleteIfExists(body);
+            }
+        }
+
+        private static String key(final String url) {
+            try {
+                return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8)));
+            } catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is unavailable", e);
+            }
+        }
+
+        private record Entry(String key, String url, String etag, String lastModified, long validated, long crc) {
+            private Duration age() {
+                return Duration.ofMillis(Math.max(0, System.currentTimeMillis() - this.validated));
+            }
+        }
+    }
+
+    // COMPLETED SEGMENTS OF A PARTIAL DOWNLOAD, PERSISTED NEXT TO THE .part FILE
+    private static final class SegmentState {
+        private final Path path;
+        private final Properties props;
+        private final int segments;
+        private final BitSet done = new BitSet();
+
+        private SegmentState(final Path path, final Properties props, final int segments) {
+            this.path = path;
+            this.props = props;
+            this.segments = segments;
+        }
+
+        // RESUMES THE STATE AT path WHEN IT DESCRIBES THE SAME REMOTE FILE AND part IS STILL THE FILE ITS
+        // SEGMENTS WERE WRITTEN TO, OTHERWISE STARTS FRESH
+        private static SegmentState load(final Path path, final Path part, final String url, final long length, final String validator, final int segments) {
+            if (validator != null && Files.isRegularFile(path)) {
+                final Properties props = new Properties();
+                try (final InputStream in = Files.newInputStream(path)) {
+                    props.load(in);
+                } catch (final IOException | IllegalArgumentException ignored) {}
+                final int count = DataTool.toInt(props.getProperty("segments"), -1);
+                if (url.equals(props.getProperty("url")) && validator.equals(props.getProperty("validator"))
+                        && length == DataTool.toLong(props.getProperty("length"), -1) && count > 0 && intact(part, length, props.getProperty("file"))) {
+                    final SegmentState state = new SegmentState(path, props, count);
+                    for (final String index: props.getProperty("done", "").split(",")) {
+                        final int i = DataTool.toInt(index, -1);
+                        if (i >= 0 && i < count) state.done.set(i);
+                    }
+                    return state;
+                }
+            }
+            final Properties props = new Properties();
+            props.setProperty("url", url);
+            props.setProperty("length", Long.toString(length));
+            props.setProperty("segments", Integer.toString(segments));
+            if (validator != null) props.setProperty("validator", validator);
+            return new SegmentState(path, props, segments);
+        }
+
+        // A DELETED, TRUNCATED OR RECREATED .part WOULD PUBLISH ZEROS WHERE THE "DONE" SEGMENTS WERE
+        private static boolean intact(final Path part, final long length, final String file) {
+            try {
+                final BasicFileAttributes attrs = Files.readAttributes(part, BasicFileAttributes.class);
+                final Object key = attrs.fileKey(); // NOT EVERY FILESYSTEM HAS ONE
+                return attrs.isRegularFile() && attrs.size() == length && (key == null || file == null || file.equals(key.toString()));
+            } catch (final IOException e) {
+                return false;
+            }
+        }
+
+        private boolean resumable() {
+            return this.props.containsKey("validator");
+        }
+
+        // IDENTITY OF THE .part FILE, CHECKED ON RESUME; PERSISTED WITH THE FIRST COMPLETED SEGMENT
+        private synchronized void file(final Object key) {
+            if (key != null) this.props.setProperty("file", key.toString());
+        }
+
+        private synchronized boolean isDone(final int index) {
+            return this.done.get(index);
+        }
+
+        private synchronized void markDone(final int index) throws IOException {
+            this.done.set(index);
+            if (!this.resumable()) return; // NOTHING WORTH PERSISTING
+
+            final StringBuilder sb = new StringBuilder();
+            for (int i = this.done.nextSetBit(0); i >= 0; i = this.done.nextSetBit(i + 1)) {
+                if (sb.length() > 0) sb.append(',');
+                sb.append(i);
+            }
+            this.props.setProperty("done", sb.toString());
+            final Path tmp = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+            try (final OutputStream out = Files.newOutputStream(tmp)) {
+                this.props.store(out, null);
+            }
+            IOTool.move(tmp, this.path);
+        }
+    }
 }
@@ -1,14 +1,39 @@
 package org.watermedia.tools;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
 public class ThreadTool {
     public static final HashMap<String, Integer> THREADS = new HashMap<>();
 
+    // Thread.ofVirtual() / Thread.Builder#name(String, long) / Thread.Builder#factory() / Executors#newThreadPerTaskExecutor,
+    // LOOKED UP REFLECTIVELY SO THE 17 BASELINE STILL COMPILES AND RUNS; null BELOW JAVA 21
+    private static final Method[] VIRTUAL = findVirtualThreads();
+
+    // LIVE METERED POOLS BY THEIR UNIQUE NAME (ALSO THEIR JMX name=)
+    private static final ConcurrentHashMap<String, Meter> METERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LaneConfig> LANE_CONFIGS = new ConcurrentHashMap<>();
+
     public static Thread createStarted(final String name, final Runnable runnable) {
         // AUTO-APPEND A PER-NAME COUNTER (name-0, name-1, ...) CONSISTENTLY WITH createStartedLoop
         final int c = THREADS.computeIfAbsent(name, k -> 0);
@@ -29,12 +54,109 @@ public class ThreadTool {
         return false;
     }
 
+    /**
+     * Creates a fixed pool of {@link #halfLeastThreads(int) halfLeastThreads(2)} daemon threads. The returned
+     * executor is a {@link MeteredExecutor}; see {@link #poolStats()}.
+     */
     public static Executor createRecommendedThreadPool(final String name, final int priority) {
-        return Executors.newFixedThreadPool(halfLeastThreads(2), createFactory(name, priority));
+        return new MeteredThreadPool(name, halfLeastThreads(2), createFactory(name, priority));
     }
 
+    /**
+     * Creates a scheduled pool of {@code threadCount} daemon threads. The returned executor is a
+     * {@link MeteredExecutor} (and a {@link ScheduledExecutorService}); see {@link #poolStats()}.
+     */
     public static Executor createScheduledThreadPool(final String name, final int threadCount, final int priority) {
-        return Executors.newScheduledThreadPool(threadCount, createFactory(name, priority));
+        return new MeteredScheduledThreadPool(name, threadCount, createFactory(name, priority));
+    }
+
+    /**
+     * Creates a pool of {@code threadCount} daemon threads whose queue is split into {@link Lane priority lanes}:
+     * a free thread always takes the oldest task of the most urgent non-empty lane, unless a lower lane's
+     * oldest task has waited past that lane's {@link LaneConfig max wait}, in which case it goes first. The
+     * lanes use the {@link #configureLanes(String, LaneConfig) configuration registered for name}, or
+     * {@link LaneConfig#DEFAULT}.
+     */
+    public static LanePool createLanePool(final String name, final int threadCount, final int priority) {
+        return new LanePool(name, threadCount, createFactory(name, priority), LANE_CONFIGS.getOrDefault(name, LaneConfig.DEFAULT));
+    }
+
+    /**
+     * Sets the lane configuration of every {@link #createLanePool(String, int, int) lane pool} created with
+     * {@code name} from now on; pools already created keep theirs.
+     */
+    public static void configureLanes(final String name, final LaneConfig config) {
+        LANE_CONFIGS.put(name, Objects.requireNonNull(config, "Config cannot be null"));
+    }
+
+    /**
+     * Creates a group of subtasks run on {@code executor} that are joined, and cancelled, together: a failure
+     * or an expired deadline interrupts every sibling still running instead of leaving it to finish for nothing.
+     * Use it in try-with-resources so leaving the block cancels whatever is left.
+     *
+     * @param executor where {@link TaskGroup#fork(Callable) forked} subtasks run
+     * @return the group
+     */
+    public static <T> TaskGroup<T> createTaskGroup(final Executor executor) {
+        return new TaskGroup<>(Objects.requireNonNull(executor, "Executor cannot be null"));
+    }
+
+    /**
+     * @return a snapshot of every live (not yet terminated) pool created by this tool, sorted by name
+     */
+    public static List<PoolStats> poolStats() {
+        final List<PoolStats> stats = new ArrayList<>(METERS.size());
+        for (final Meter meter: METERS.values()) {
+            stats.add(meter.stats());
+        }
+        stats.sort((a, b) -> a.name().compareTo(b.name()));
+        return stats;
+    }
+
+    /**
+     * Creates an executor for blocking I/O fan-out (HTTP requests, downloads) that starts one thread per task.
+     * On Java 21+ the threads are virtual, so thousands of blocked tasks cost no platform threads; below that
+     * it falls back to a cached pool of daemon platform threads. Either way threads are named {@code name-N}.
+     *
+     * @param name base thread name
+     * @return the executor; shut it down when done
+     */
+    public static ExecutorService createVirtualThreadPool(final String name) {
+        if (VIRTUAL != null) {
+            try {
+                return (ExecutorService) VIRTUAL[3].invoke(null, createVirtualFactory(name));
+            } catch (final ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to create virtual thread executor", e);
+            }
+        }
+        return Executors.newCachedThreadPool(createFactory(name, Thread.NORM_PRIORITY));
+    }
+
+    /**
+     * Creates a factory of virtual threads named {@code name-N} on Java 21+, or of daemon platform threads
+     * ({@link #createFactory(String, int)} with normal priority) below that.
+     *
+     * @param name base thread name
+     * @return the thread factory
+     */
+    public static ThreadFactory createVirtualFactory(final String name) {
+        if (VIRTUAL != null) {
+            try {
+                final Object builder = VIRTUAL[1].invoke(VIRTUAL[0].invoke(null), name + "-", 0L);
+                return (ThreadFactory) VIRTUAL[2].invoke(builder);
+            } catch (final ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to create virtual thread factory", e);
+            }
+        }
+        return createFactory(name, Thread.NORM_PRIORITY);
+    }
+
+    /**
+     * @return <code>true</code> if {@link #createVirtualThreadPool(String)} and {@link #createVirtualFactory(String)}
+     * hand out virtual threads on this runtime
+     */
+    public static boolean supportsVirtualThreads() {
+        return VIRTUAL != null;
     }
 
     public static ThreadGroupFactory createThreadGroupFactory(final String name, final int priority) {
@@ -109,6 +231,8 @@ public class ThreadTool {
     /**
      * Creates and starts a daemon thread that runs {@code runnable} in a loop until interrupted.
      * The loop checks the interrupted status on each iteration, so interrupting the thread stops it.
+     * The body runs back to back; use {@link #createStartedLoop(String, double, LoopPolicy, Runnable)} to run
+     * it at a fixed rate instead.
      *
      * @param name     base thread name; a per-name counter is appended ({@code name-0}, {@code name-1}, ...)
      * @param runnable the body executed on every loop iteration
@@ -128,6 +252,22 @@ public class ThreadTool {
         return t;
     }
 
+    /**
+     * Creates and starts a daemon thread that runs {@code runnable} at {@code hz} iterations per second until
+     * {@link PacedLoop#stop() stopped} or interrupted. Iteration {@code n} is scheduled at {@code start + n * period}
+     * rather than a fixed sleep after the previous one, so the time the body takes does not make the rate drift.
+     *
+     * @param name     base thread name; a per-name counter is appended ({@code name-0}, {@code name-1}, ...)
+     * @param hz       target rate in iterations per second
+     * @param policy   what to do after falling behind schedule
+     * @param runnable the body executed on every iteration
+     * @return a handle to pause, resume, stop and inspect the loop
+     */
+    public static PacedLoop createStartedLoop(final String name, final double hz, final LoopPolicy policy, final Runnable runnable) {
+        if (!(hz > 0) || Double.isInfinite(hz)) throw new IllegalArgumentException("Rate must be positive: " + hz);
+        return new PacedLoop(name, Math.max(1, Math.round(1_000_000_000d / hz)), Objects.requireNonNull(policy, "Policy cannot be null"), runnable);
+    }
+
     public static int maxThreads() { return Runtime.getRuntime().availableProcessors(); }
     public static int halfLeastThreads(final int count) { return Math.max(count, halfThreads()); }
     public static int halfThreads() { return maxThreads() / 2; }
@@ -149,7 +289,1008 @@ public class ThreadTool {
         Thread.currentThread().interrupt();
     }
 
+    private static Method[] findVirtualThreads() {
+        if (Runtime.version().feature() < 21) return null; // PREVIEW-ONLY ON 19/20
+        try {
+            final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            final Method[] methods = {
+                    Thread.class.getMethod("ofVirtual"),
+                    builder.getMethod("name", String.class, long.class),
+                    builder.getMethod("factory"),
+                    Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+            };
+            // PROBE ONCE: A RUNTIME THAT HAS THE API BUT CANNOT USE IT FALLS BACK TO PLATFORM THREADS
+            methods[2].invoke(methods[1].invoke(methods[0].invoke(null), "probe-", 0L));
+            return methods;
+        } catch (final Throwable e) {
+            return null;
+        }
+    }
+
     public interface ThreadGroupFactory {
         BiFunction<String, Runnable, Thread> newFactory();
     }
+
+    /**
+     * Subtasks created by {@link #createTaskGroup(Executor)}. Fork any number of them, then wait for all with
+     * {@link #joinAll(Duration)} or for the first success with {@link #joinAny(Duration)}; either way the
+     * subtasks still running when the join returns or throws are cancelled with an interrupt.
+     *
+     * @param <T> result type of the subtasks
+     */
+    public static final class TaskGroup<T> implements AutoCloseable {
+        private final Executor executor;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = this.lock.newCondition();
+        private final List<Subtask> subtasks = new ArrayList<>();
+        private int pending;
+        private Throwable failure;
+        private Subtask success;
+        private boolean cancelled;
+
+        private TaskGroup(final Executor executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Starts {@code task} on the group's executor.
+         *
+         * @return its future, for reading the result of one specific subtask
+         * @throws IllegalStateException if the group was already cancelled or closed
+         */
+        public Future<T> fork(final Callable<? extends T> task) {
+            final Subtask subtask = new Subtask(Objects.requireNonNull(task, "Task cannot be null"));
+            this.lock.lock();
+            try {
+                if (this.cancelled) throw new IllegalStateException("Task group is cancelled");
+                this.subtasks.add(subtask);
+                this.pending++;
+            } finally {
+                this.lock.unlock();
+            }
+            try {
+                this.executor.execute(subtask);
+            } catch (final RejectedExecutionException e) {
+                subtask.cancel(false); // COUNTS IT AS DONE
+                throw e;
+            }
+            return subtask;
+        }
+
+        /**
+         * Waits for every subtask to succeed.
+         *
+         * @param timeout how long to wait at most
+         * @return the results in fork order
+         * @throws ExecutionException    with the cause of the first subtask that failed; the rest are cancelled
+         * @throws CancellationException if a subtask was cancelled by the group, e.g. after {@link #close()}
+         * @throws TimeoutException      if the subtasks did not all finish in time; they are cancelled
+         * @throws InterruptedException  if the calling thread was interrupted; the subtasks are cancelled
+         */
+        public List<T> joinAll(final Duration timeout) throws ExecutionException, TimeoutException, InterruptedException {
+            final List<Subtask> subtasks;
+            this.lock.lock();
+            try {
+                long nanos = timeout.toNanos();
+                while (this.pending > 0 && this.failure == null) {
+                    if (nanos <= 0) throw new TimeoutException("Task group did not finish within " + timeout);
+                    nanos = this.changed.awaitNanos(nanos);
+                }
+                if (this.failure != null) throw new ExecutionException(this.failure);
+                // CANCELLED BY THE GROUP ITSELF (cancel, close OR A joinAny) LEAVES NO FAILURE, BUT NO VALUE EITHER
+                for (final Subtask subtask: this.subtasks) {
+                    if (subtask.isCancelled()) throw new CancellationException("Task group was cancelled");
+                }
+                subtasks = List.copyOf(this.subtasks);
+            } finally {
+                this.lock.unlock();
+                this.cancel(); // NO-OP WHEN EVERYTHING ALREADY SUCCEEDED
+            }
+
+            final List<T> results = new ArrayList<>(subtasks.size());
+            for (final Subtask subtask: subtasks) {
+                results.add(subtask.value);
+            }
+            return results;
+        }
+
+        /**
+         * Waits for the first subtask to succeed and cancels the others.
+         *
+         * @param timeout how long to wait at most
+         * @return the result of the first subtask to succeed
+         * @throws ExecutionException    if every subtask failed, with the cause of the first failure
+         * @throws CancellationException if no subtask succeeded and none failed, as the group cancelled them
+         * @throws TimeoutException      if none succeeded in time; they are cancelled
+         * @throws InterruptedException  if the calling thread was interrupted; the subtasks are cancelled
+         */
+        public T joinAny(final Duration timeout) throws ExecutionException, TimeoutException, InterruptedException {
+            this.lock.lock();
+            try {
+                if (this.subtasks.isEmpty()) throw new IllegalStateException("No task was forked");
+                long nanos = timeout.toNanos();
+                while (this.success == null && this.pending > 0) {
+                    if (nanos <= 0) throw new TimeoutException("No task succeeded within " + timeout);
+                    nanos = this.changed.awaitNanos(nanos);
+                }
+                if (this.success == null) {
+                    if (this.failure == null) throw new CancellationException("Task group was cancelled");
+                    throw new ExecutionException(this.failure);
+                }
+                return this.success.value;
+            } finally {
+                this.lock.unlock();
+                this.cancel();
+            }
+        }
+
+        /**
+         * Cancels every subtask not done yet, interrupting the running ones, and rejects further forks.
+         */
+        public void cancel() {
+            final List<Subtask> subtasks;
+            this.lock.lock();
+            try {
+                this.cancelled = true;
+                if (this.pending == 0) return;
+                subtasks = List.copyOf(this.subtasks);
+            } finally {
+                this.lock.unlock();
+            }
+            for (final Subtask subtask: subtasks) {
+                subtask.cancel(true);
+            }
+        }
+
+        /**
+         * Same as {@link #cancel()}; does not wait for interrupted subtasks to return.
+         */
+        @Override
+        public void close() {
+            this.cancel();
+        }
+
+        private final class Subtask extends FutureTask<T> {
+            private T value; // SET BEFORE done() RUNS
+            private Throwable error;
+
+            private Subtask(final Callable<? extends T> task) {
+                super(task::call);
+            }
+
+            @Override
+            protected void set(final T value) {
+                this.value = value;
+                super.set(value);
+            }
+
+            @Override
+            protected void setException(final Throwable error) {
+                this.error = error;
+                super.setException(error);
+            }
+
+            @Override
+            protected void done() {
+                final TaskGroup<T> group = TaskGroup.this;
+                group.lock.lock();
+                try {
+                    group.pending--;
+                    if (this.isCancelled()) {
+                        // CANCELLED FROM OUTSIDE THE GROUP: THE GROUP CANNOT COMPLETE NORMALLY ANYMORE
+                        if (!group.cancelled && group.failure == null) group.failure = new CancellationException("Task was cancelled");
+                    } else if (this.error != null) {
+                        if (group.failure == null) group.failure = this.error;
+                    } else if (group.success == null) {
+                        group.success = this;
+                    }
+                    group.changed.signalAll();
+                } finally {
+                    group.lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * What a {@link PacedLoop} does when an iteration ends after the next one was due.
+     */
+    public enum LoopPolicy {
+        /** Run the missed iterations back to back until on schedule again; keeps the iteration count exact. */
+        CATCH_UP,
+        /** Drop the missed iterations and continue at the next future tick; keeps the phase, loses iterations. */
+        SKIP
+    }
+
+    /**
+     * Point-in-time statistics of a {@link PacedLoop}.
+     *
+     * @param iterations iterations run so far
+     * @param skipped    iterations dropped by {@link LoopPolicy#SKIP}
+     * @param jitter     how late each iteration started relative to its scheduled time
+     */
+    public record LoopStats(long iterations, long skipped, Latency jitter) {}
+
+    /**
+     * Handle of a loop started by {@link #createStartedLoop(String, double, LoopPolicy, Runnable)}. The thread
+     * sleeps with {@link LockSupport#parkNanos(Object, long)} between iterations, so it uses no CPU while idle.
+     */
+    public static final class PacedLoop {
+        private final long period;
+        private final LoopPolicy policy;
+        private final Runnable runnable;
+        private final Thread thread;
+        private final Histogram jitter = new Histogram();
+        private final LongAdder skipped = new LongAdder();
+        private volatile boolean paused;
+        private volatile boolean stopped;
+
+        private PacedLoop(final String name, final long period, final LoopPolicy policy, final Runnable runnable) {
+            this.period = period;
+            this.policy = policy;
+            this.runnable = runnable;
+            this.thread = createStarted(name, this::run);
+        }
+
+        private void run() {
+            long start = System.nanoTime();
+            long n = 0;
+            while (!this.stopped && !Thread.currentThread().isInterrupted()) {
+                if (this.paused) {
+                    LockSupport.park(this);
+                    start = System.nanoTime(); // RESUME ON A FRESH SCHEDULE INSTEAD OF CATCHING UP THE PAUSE
+                    n = 0;
+                    continue;
+                }
+
+                final long due = start + n * this.period;
+                long now = System.nanoTime();
+                while (due - now > 0 && !this.paused && !this.stopped && !Thread.currentThread().isInterrupted()) {
+                    LockSupport.parkNanos(this, due - now);
+                    now = System.nanoTime();
+                }
+                if (due - now > 0) continue; // WOKEN TO PAUSE OR STOP
+
+                this.jitter.record(now - due);
+                this.runnable.run();
+                n++;
+
+                if (this.policy == LoopPolicy.SKIP) {
+                    final long behind = (System.nanoTime() - (start + n * this.period)) / this.period;
+                    if (behind > 0) {
+                        n += behind; // NEXT TICK IS STILL ON THE ORIGINAL GRID
+                        this.skipped.add(behind);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Suspends the loop after the current iteration; it parks until {@link #resume() resumed}.
+         */
+        public void pause() {
+            this.paused = true;
+            LockSupport.unpark(this.thread);
+        }
+
+        /**
+         * Resumes a paused loop. The schedule restarts from now, so the pause is not caught up.
+         */
+        public void resume() {
+            this.paused = false;
+            LockSupport.unpark(this.thread);
+        }
+
+        public boolean isPaused() {
+            return this.paused;
+        }
+
+        /**
+         * Stops the loop after the current iteration and interrupts the thread.
+         */
+        public void stop() {
+            this.stopped = true;
+            this.thread.interrupt();
+        }
+
+        public Thread thread() {
+            return this.thread;
+        }
+
+        public LoopStats stats() {
+            final Latency jitter = this.jitter.snapshot();
+            return new LoopStats(jitter.count(), this.skipped.sum(), jitter);
+        }
+    }
+
+    /**
+     * Executor that records how long tasks wait in its queue and how long they run, so a stall can be told
+     * apart as queueing, slow tasks or an undersized pool. Recording costs two {@link System#nanoTime()}
+     * calls and a few {@link LongAdder} increments per task. Each pool is also published over JMX as
+     * {@code org.watermedia.tools:type=ThreadPool,name=<name>} until it terminates.
+     */
+    public interface MeteredExecutor extends ExecutorService {
+        /**
+         * @return the unique name the pool is reported under (the thread name, suffixed if it was taken)
+         */
+        String name();
+
+        PoolStats stats();
+    }
+
+    /**
+     * Point-in-time metrics of a {@link MeteredExecutor}.
+     *
+     * @param name          unique pool name
+     * @param poolSize      threads currently in the pool
+     * @param activeThreads threads currently running a task
+     * @param queueDepth    tasks waiting to run (for scheduled pools, including those not yet due)
+     * @param submitted     tasks accepted so far (periodic tasks count once)
+     * @param completed     task runs finished so far, successfully or not
+     * @param rejected      tasks rejected so far
+     * @param waitTime      time from submission (or, for scheduled tasks, from when they were due) to start
+     * @param runTime       time spent running
+     */
+    public record PoolStats(String name, int poolSize, int activeThreads, int queueDepth, long submitted,
+                            long completed, long rejected, Latency waitTime, Latency runTime) {}
+
+    /**
+     * Latency distribution in power-of-two buckets: bucket {@code i} counts samples in
+     * {@code [2^i, 2^(i+1))} nanoseconds (bucket 0 also holds 0 and 1, the last one everything above).
+     */
+    public record Latency(long count, long totalNanos, long maxNanos, long[] buckets) {
+        public long meanNanos() {
+            return this.count == 0 ? 0 : this.totalNanos / this.count;
+        }
+
+        /**
+         * @param percentile in {@code [0, 100]}
+         * @return upper bound of the bucket holding that percentile, capped at {@link #maxNanos()}
+         */
+        public long percentileNanos(final double percentile) {
+            if (this.count == 0) return 0;
+            final long rank = (long) Math.ceil(this.count * Math.min(Math.max(percentile, 0), 100) / 100);
+            long seen = 0;
+            for (int i = 0; i < this.buckets.length; i++) {
+                seen += this.buckets[i];
+                if (seen >= Math.max(1, rank)) return Math.min(this.maxNanos, (1L << (i + 1)) - 1);
+            }
+            return this.maxNanos;
+        }
+    }
+
+    /**
+     * JMX view of a {@link MeteredExecutor}; all times in nanoseconds.
+     */
+    public interface ThreadPoolMXBean {
+        String getName();
+        int getPoolSize();
+        int getActiveThreads();
+        int getQueueDepth();
+        long getSubmitted();
+        long getCompleted();
+        long getRejected();
+        long getWaitMeanNanos();
+        long getWaitP99Nanos();
+        long getWaitMaxNanos();
+        long getRunMeanNanos();
+        long getRunP50Nanos();
+        long getRunP99Nanos();
+        long getRunMaxNanos();
+    }
+
+    /**
+     * Fixed-size {@link ThreadPoolExecutor} with an unbounded queue, instrumented as a {@link MeteredExecutor}.
+     * Tasks are wrapped to stamp their submission time; {@link #shutdownNow()} and {@link #remove(Runnable)}
+     * deal in the original tasks.
+     */
+    public static final class MeteredThreadPool extends ThreadPoolExecutor implements MeteredExecutor {
+        private final Meter meter;
+
+        private MeteredThreadPool(final String name, final int threads, final ThreadFactory factory) {
+            this(threads, factory, new Meter(name));
+        }
+
+        private MeteredThreadPool(final int threads, final ThreadFactory factory, final Meter meter) {
+            super(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), factory, meter);
+            this.meter = meter.register(this);
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            Objects.requireNonNull(command, "Task cannot be null");
+            this.meter.submitted.increment();
+            super.execute(new Queued(command));
+        }
+
+        // MATCHES THE ORIGINAL TASK, OR THE WRAPPER ITSELF AS ThreadPoolExecutor.execute PASSES IT WHEN IT
+        // LOSES A RACE WITH SHUTDOWN; super.remove DOES THE UNLINK SO A SHUTDOWN POOL CAN STILL TERMINATE
+        @Override
+        public boolean remove(final Runnable task) {
+            for (final Runnable queued: this.getQueue()) {
+                if (queued == task || ((Queued) queued).task == task) return super.remove(queued);
+            }
+            return false;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            final List<Runnable> pending = super.shutdownNow();
+            pending.replaceAll(r -> ((Queued) r).task);
+            return pending;
+        }
+
+        @Override
+        protected void beforeExecute(final Thread t, final Runnable r) {
+            this.meter.started(System.nanoTime() - ((Queued) r).queued);
+        }
+
+        @Override
+        protected void afterExecute(final Runnable r, final Throwable t) {
+            this.meter.finished();
+        }
+
+        @Override
+        protected void terminated() {
+            this.meter.unregister();
+        }
+
+        @Override
+        public String name() {
+            return this.meter.name;
+        }
+
+        @Override
+        public PoolStats stats() {
+            return this.meter.stats();
+        }
+
+        private record Queued(Runnable task, long queued) implements Runnable {
+            private Queued(final Runnable task) {
+                this(task, System.nanoTime());
+            }
+
+            @Override
+            public void run() {
+                this.task.run();
+            }
+
+            @Override
+            public String toString() {
+                return this.task.toString();
+            }
+        }
+    }
+
+    /**
+     * {@link ScheduledThreadPoolExecutor} instrumented as a {@link MeteredExecutor}. Wait time is measured from
+     * when a task was due, so it reports how late scheduled and periodic tasks start.
+     */
+    public static final class MeteredScheduledThreadPool extends ScheduledThreadPoolExecutor implements MeteredExecutor {
+        private final Meter meter;
+
+        private MeteredScheduledThreadPool(final String name, final int threads, final ThreadFactory factory) {
+            this(threads, factory, new Meter(name));
+        }
+
+        private MeteredScheduledThreadPool(final int threads, final ThreadFactory factory, final Meter meter) {
+            super(threads, factory, meter);
+            this.meter = meter.register(this);
+        }
+
+        @Override
+        protected <V> RunnableScheduledFuture<V> decorateTask(final Runnable runnable, final RunnableScheduledFuture<V> task) {
+            this.meter.submitted.increment();
+            return task;
+        }
+
+        @Override
+        protected <V> RunnableScheduledFuture<V> decorateTask(final Callable<V> callable, final RunnableScheduledFuture<V> task) {
+            this.meter.submitted.increment();
+            return task;
+        }
+
+        @Override
+        protected void beforeExecute(final Thread t, final Runnable r) {
+            // A DUE TASK'S DELAY IS NEGATIVE: HOW LATE IT IS
+            this.meter.started(r instanceof Delayed d ? Math.max(0, -d.getDelay(TimeUnit.NANOSECONDS)) : 0);
+        }
+
+        @Override
+        protected void afterExecute(final Runnable r, final Throwable t) {
+            this.meter.finished();
+        }
+
+        @Override
+        protected void terminated() {
+            this.meter.unregister();
+        }
+
+        @Override
+        public String name() {
+            return this.meter.name;
+        }
+
+        @Override
+        public PoolStats stats() {
+            return this.meter.stats();
+        }
+    }
+
+    /**
+     * Priority lanes of a {@link LanePool}, most urgent first.
+     */
+    public enum Lane {
+        /** Latency critical work, e.g. frame decode and upload. */
+        URGENT,
+        /** Regular work; plain {@link Executor#execute(Runnable)} and {@code submit} calls land here. */
+        NORMAL,
+        /** Work nobody is waiting on, e.g. thumbnail prefetch and cache cleanup. */
+        BACKGROUND
+    }
+
+    /**
+     * Anti-starvation limits of a {@link LanePool}: once the oldest task of a lane has waited this long it is
+     * run before any more urgent task.
+     *
+     * @param normalMaxWait     max wait of {@link Lane#NORMAL} tasks
+     * @param backgroundMaxWait max wait of {@link Lane#BACKGROUND} tasks
+     */
+    public record LaneConfig(Duration normalMaxWait, Duration backgroundMaxWait) {
+        public static final LaneConfig DEFAULT = new LaneConfig(Duration.ofMillis(100), Duration.ofSeconds(2));
+
+        public LaneConfig {
+            if (normalMaxWait.isNegative() || backgroundMaxWait.isNegative()) throw new IllegalArgumentException("Max wait cannot be negative");
+        }
+    }
+
+    /**
+     * Fixed-size pool whose threads share one queue split into {@link Lane lanes}, instrumented as a
+     * {@link MeteredExecutor}. Every idle thread takes from the same queue, so work spreads over the pool the
+     * way work stealing would, while urgent tasks overtake everything queued behind them.
+     */
+    public static final class LanePool extends ThreadPoolExecutor implements MeteredExecutor {
+        private final Meter meter;
+        private final LaneQueue queue;
+
+        private LanePool(final String name, final int threads, final ThreadFactory factory, final LaneConfig config) {
+            this(threads, factory, new LaneQueue(config), new Meter(name));
+        }
+
+        private LanePool(final int threads, final ThreadFactory factory, final LaneQueue queue, final Meter meter) {
+            super(threads, threads, 0L, TimeUnit.MILLISECONDS, queue, factory, meter);
+            this.queue = queue;
+            this.meter = meter.register(this);
+        }
+
+        /**
+         * Runs {@code command} in the {@link Lane#NORMAL} lane.
+         */
+        @Override
+        public void execute(final Runnable command) {
+            this.execute(Lane.NORMAL, command);
+        }
+
+        public void execute(final Lane lane, final Runnable command) {
+            Objects.requireNonNull(lane, "Lane cannot be null");
+            Objects.requireNonNull(command, "Task cannot be null");
+            this.meter.submitted.increment();
+            super.execute(new Task(command, lane, System.nanoTime()));
+        }
+
+        public Future<?> submit(final Lane lane, final Runnable task) {
+            final RunnableFuture<Void> future = this.newTaskFor(task, null);
+            this.execute(lane, future);
+            return future;
+        }
+
+        public <T> Future<T> submit(final Lane lane, final Callable<T> task) {
+            final RunnableFuture<T> future = this.newTaskFor(task);
+            this.execute(lane, future);
+            return future;
+        }
+
+        /**
+         * @return tasks currently waiting in {@code lane}
+         */
+        public int queueDepth(final Lane lane) {
+            return this.queue.size(lane);
+        }
+
+        // MATCHES THE ORIGINAL TASK, OR THE WRAPPER ITSELF AS ThreadPoolExecutor.execute PASSES IT WHEN IT
+        // LOSES A RACE WITH SHUTDOWN; super.remove DOES THE UNLINK SO A SHUTDOWN POOL CAN STILL TERMINATE
+        @Override
+        public boolean remove(final Runnable task) {
+            final Task queued = this.queue.find(task);
+            return queued != null && super.remove(queued);
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            final List<Runnable> pending = super.shutdownNow();
+            pending.replaceAll(r -> ((Task) r).task);
+            return pending;
+        }
+
+        @Override
+        protected void beforeExecute(final Thread t, final Runnable r) {
+            this.meter.started(System.nanoTime() - ((Task) r).queued);
+        }
+
+        @Override
+        protected void afterExecute(final Runnable r, final Throwable t) {
+            this.meter.finished();
+        }
+
+        @Override
+        protected void terminated() {
+            this.meter.unregister();
+        }
+
+        @Override
+        public String name() {
+            return this.meter.name;
+        }
+
+        @Override
+        public PoolStats stats() {
+            return this.meter.stats();
+        }
+
+        private record Task(Runnable task, Lane lane, long queued) implements Runnable {
+            @Override
+            public void run() {
+                this.task.run();
+            }
+
+            @Override
+            public String toString() {
+                return this.task.toString();
+            }
+        }
+
+        // ONE FIFO PER LANE BEHIND A SINGLE LOCK; UNBOUNDED, SO offer ALWAYS SUCCEEDS
+        private static final class LaneQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+            private static final Lane[] LANES = Lane.values();
+            private final ReentrantLock lock = new ReentrantLock();
+            private final Condition notEmpty = this.lock.newCondition();
+            @SuppressWarnings("unchecked")
+            private final ArrayDeque<Task>[] lanes = (ArrayDeque<Task>[]) new ArrayDeque<?>[LANES.length];
+            private final long[] maxWait = new long[LANES.length];
+            private int count;
+
+            private LaneQueue(final LaneConfig config) {
+                for (int i = 0; i < LANES.length; i++) {
+                    this.lanes[i] = new ArrayDeque<>();
+                }
+                this.maxWait[Lane.NORMAL.ordinal()] = config.normalMaxWait().toNanos();
+                this.maxWait[Lane.BACKGROUND.ordinal()] = config.backgroundMaxWait().toNanos();
+            }
+
+            @Override
+            public boolean offer(final Runnable r) {
+                final Task task = r instanceof Task t ? t : new Task(r, Lane.NORMAL, System.nanoTime());
+                this.lock.lock();
+                try {
+                    this.lanes[task.lane.ordinal()].addLast(task);
+                    this.count++;
+                    this.notEmpty.signal();
+                } finally {
+                    this.lock.unlock();
+                }
+                return true;
+            }
+
+            @Override
+            public void put(final Runnable r) {
+                this.offer(r);
+            }
+
+            @Override
+            public boolean offer(final Runnable r, final long timeout, final TimeUnit unit) {
+                return this.offer(r);
+            }
+
+            @Override
+            public Runnable poll() {
+                this.lock.lock();
+                try {
+                    return this.count == 0 ? null : this.dequeue();
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+
+            @Override
+            public Runnable take() throws InterruptedException {
+                this.lock.lockInterruptibly();
+                try {
+                    while (this.count == 0) this.notEmpty.await();
+                    return this.dequeue();
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+
+            @Override
+            public Runnable poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+                long nanos = unit.toNanos(timeout);
+                this.lock.lockInterruptibly();
+                try {
+                    while (this.count == 0) {
+                        if (nanos <= 0) return null;
+                        nanos = this.notEmpty.awaitNanos(nanos);
+                    }
+                    return this.dequeue();
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+
+            @Override
+            public Runnable peek() {
+                this.lock.lock();
+                try {
+                    final int lane = this.next();
+                    return lane < 0 ? null : this.lanes[lane].peekFirst();
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+
+            @Override
+            public int size() {
+                this.lock.lock();
+                try {
+                    return this.count;
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+
+            private int size(final Lane lane) {
+                this.lock.lock();
+                try {
+                    return this.lanes[lane.ordinal()].size();
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+
+            @Override
+            public int remainingCapacity() {
+                return Integer.MAX_VALUE;
+            }
+
+            // UNLINKS EXACTLY ONE ENTRY, BY IDENTITY: THE SAME TASK MAY BE QUEUED MORE THAN ONCE
+            @Override
+            public boolean remove(final Object o) {
+                this.lock.lock();
+                try {
+                    for (final ArrayDeque<Task> lane: this.lanes) {
+                        for (final Iterator<Task> it = lane.iterator(); it.hasNext();) {
+                            if (it.next() == o) {
+                                it.remove();
+                                this.count--;
+                                return true;
+                            }
+                        }
+                    }
+                    return false;
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+
+            // FIRST QUEUED WRAPPER THAT IS task OR WRAPS IT, IN TAKE ORDER OF THE LANES
+            private Task find(final Runnable task) {
+                this.lock.lock();
+                try {
+                    for (final ArrayDeque<Task> lane: this.lanes) {
+                        for (final Task queued: lane) {
+                            if (queued == task || queued.task == task) return queued;
+                        }
+                    }
+                    return null;
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+
+            @Override
+            public int drainTo(final Collection<? super Runnable> c) {
+                return this.drainTo(c, Integer.MAX_VALUE);
+            }
+
+            @Override
+            public int drainTo(final Collection<? super Runnable> c, final int maxElements) {
+                this.lock.lock();
+                try {
+                    int n = 0;
+                    while (n < maxElements && this.count > 0) {
+                        c.add(this.dequeue());
+                        n++;
+                    }
+                    return n;
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+
+            // SNAPSHOT IN TAKE ORDER OF THE LANES; remove() GOES BACK TO THE QUEUE
+            @Override
+            public Iterator<Runnable> iterator() {
+                final List<Runnable> snapshot = new ArrayList<>();
+                this.lock.lock();
+                try {
+                    for (final ArrayDeque<Task> lane: this.lanes) snapshot.addAll(lane);
+                } finally {
+                    this.lock.unlock();
+                }
+                final Iterator<Runnable> it = snapshot.iterator();
+                return new Iterator<>() {
+                    private Runnable last;
+
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Runnable next() {
+                        return this.last = it.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (this.last == null) throw new IllegalStateException();
+                        LaneQueue.this.remove(this.last);
+                        this.last = null;
+                    }
+                };
+            }
+
+            private Task dequeue() {
+                this.count--;
+                return this.lanes[this.next()].pollFirst();
+            }
+
+            // LANE TO TAKE FROM: THE MOST OVERDUE STARVING LANE, ELSE THE MOST URGENT NON-EMPTY ONE; -1 IF EMPTY
+            private int next() {
+                final long now = System.nanoTime();
+                int lane = -1;
+                long overdue = -1;
+                for (int i = 1; i < this.lanes.length; i++) {
+                    final Task head = this.lanes[i].peekFirst();
+                    if (head == null) continue;
+                    final long late = now - head.queued - this.maxWait[i];
+                    if (late >= 0 && late > overdue) {
+                        lane = i;
+                        overdue = late;
+                    }
+                }
+                if (lane >= 0) return lane;
+                for (int i = 0; i < this.lanes.length; i++) {
+                    if (!this.lanes[i].isEmpty()) return i;
+                }
+                return -1;
+            }
+        }
+    }
+
+    // SHARED COUNTERS OF ALL METERED POOLS; ALSO THEIR REJECTION POLICY (ABORT) AND JMX BEAN
+    private static final class Meter implements RejectedExecutionHandler, ThreadPoolMXBean {
+        private static final ThreadLocal<long[]> STARTED = ThreadLocal.withInitial(() -> new long[1]);
+
+        private final String requested;
+        private String name;
+        private ObjectName objectName;
+        private ThreadPoolExecutor pool;
+        private final LongAdder submitted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder active = new LongAdder();
+        private final Histogram waits = new Histogram();
+        private final Histogram runs = new Histogram();
+
+        private Meter(final String name) {
+            this.requested = name;
+        }
+
+        // CLAIMS A UNIQUE NAME AND PUBLISHES THE BEAN; JMX BEING UNAVAILABLE ONLY LOSES THE BEAN
+        private Meter register(final ThreadPoolExecutor pool) {
+            this.pool = pool;
+            String name = this.requested;
+            for (int i = 1; METERS.putIfAbsent(name, this) != null; i++) {
+                name = this.requested + "#" + i;
+            }
+            this.name = name;
+            try {
+                this.objectName = new ObjectName("org.watermedia.tools:type=ThreadPool,name=" + name.replaceAll("[,=:\"*?]", "_"));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.objectName);
+            } catch (final JMException | SecurityException | LinkageError e) {
+                this.objectName = null;
+            }
+            return this;
+        }
+
+        private void unregister() {
+            METERS.remove(this.name, this);
+            if (this.objectName == null) return;
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            } catch (final JMException | SecurityException e) {
+                // ALREADY GONE
+            }
+        }
+
+        private void started(final long waitNanos) {
+            this.waits.record(waitNanos);
+            this.active.increment();
+            STARTED.get()[0] = System.nanoTime();
+        }
+
+        private void finished() {
+            this.runs.record(System.nanoTime() - STARTED.get()[0]);
+            this.active.decrement();
+        }
+
+        @Override
+        public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+            this.rejected.increment();
+            this.submitted.decrement();
+            throw new RejectedExecutionException("Task " + r + " rejected from " + this.name + (executor.isShutdown() ? " (shut down)" : ""));
+        }
+
+        private PoolStats stats() {
+            return new PoolStats(this.name, this.pool.getPoolSize(), this.active.intValue(), this.pool.getQueue().size(),
+                    this.submitted.sum(), this.runs.count.sum(), this.rejected.sum(), this.waits.snapshot(), this.runs.snapshot());
+        }
+
+        @Override public String getName() { return this.name; }
+        @Override public int getPoolSize() { return this.pool.getPoolSize(); }
+        @Override public int getActiveThreads() { return this.active.intValue(); }
+        @Override public int getQueueDepth() { return this.pool.getQueue().size(); }
+        @Override public long getSubmitted() { return this.submitted.sum(); }
+        @Override public long getCompleted() { return this.runs.count.sum(); }
+        @Override public long getRejected() { return this.rejected.sum(); }
+        @Override public long getWaitMeanNanos() { return this.waits.snapshot().meanNanos(); }
+        @Override public long getWaitP99Nanos() { return this.waits.snapshot().percentileNanos(99); }
+        @Override public long getWaitMaxNanos() { return this.waits.max.get(); }
+        @Override public long getRunMeanNanos() { return this.runs.snapshot().meanNanos(); }
+        @Override public long getRunP50Nanos() { return this.runs.snapshot().percentileNanos(50); }
+        @Override public long getRunP99Nanos() { return this.runs.snapshot().percentileNanos(99); }
+        @Override public long getRunMaxNanos() { return this.runs.max.get(); }
+    }
+
+    // LOG2 HISTOGRAM OF NANOSECOND SAMPLES, CONTENTION-FREE TO RECORD
+    private static final class Histogram {
+        private static final int BUCKETS = 41; // UP TO ~18 MINUTES; THE LAST BUCKET TAKES THE REST
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                this.buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            this.buckets[Math.min(BUCKETS - 1, Math.max(0, 63 - Long.numberOfLeadingZeros(nanos)))].increment();
+            this.count.increment();
+            this.total.add(nanos);
+            this.max.accumulate(nanos);
+        }
+
+        private Latency snapshot() {
+            final long[] counts = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += counts[i] = this.buckets[i].sum();
+            }
+            return new Latency(count, this.total.sum(), this.max.get(), counts); // COUNT AGREES WITH THE BUCKETS
+        }
+    }
 }
@@ -1,43 +1,86 @@
 package org.watermedia.tools;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * Encapsulates semantic version information and related comparison behaviors.
  */
 public class VersionTool implements Comparable<VersionTool> {
-    private static final Pattern VERSION_PATTERN = Pattern.compile("(\\d+)\\.(\\d+)\\.(\\d+)[\\-_\\s]?(.*)");
+    private static final int CACHE_LIMIT = 4096;
+    private static final ConcurrentHashMap<String, VersionTool> CACHE = new ConcurrentHashMap<>();
 
     public final String version;
     public final int major;
     public final int minor;
     public final int revision;
     public final String extra;
+    private final int preRelease; // LENGTH OF THE PRE-RELEASE PART OF extra, 0 WHEN IT IS NOT ONE
 
     /**
      * Creates a new version from the given version string.
+     * Accepts {@code major.minor.revision}, optionally followed by one {@code -}, {@code _} or whitespace
+     * separator and an {@code extra} tag; anything else yields 0.0.0. Only a {@code -} separated tag is a
+     * pre-release; any other is a build qualifier (e.g. {@code 2.0.0_mc1.20.1}) and does not affect ordering.
      *
      * @param version version string
      */
     public VersionTool(final String version) {
         this.version = version == null ? "" : version;
-        final Matcher matcher = VERSION_PATTERN.matcher(this.version);
-        if (matcher.matches()) {
-            this.major = Integer.parseInt(matcher.group(1));
-            this.minor = Integer.parseInt(matcher.group(2));
-            this.revision = Integer.parseInt(matcher.group(3));
-            if (matcher.groupCount() > 3) {
-                this.extra = matcher.group(4);
-            } else {
-                this.extra = null;
+
+        // HAND-ROLLED EQUIVALENT OF (\d+)\.(\d+)\.(\d+)[\-_\s]?(.*) - NO Matcher, NO GROUP SUBSTRINGS
+        final String s = this.version;
+        final int len = s.length();
+        int i = 0;
+        final int major, minor, revision;
+        int end;
+        if ((end = digits(s, i)) > i && end < len && s.charAt(end) == '.') {
+            major = number(s, i, end);
+            i = end + 1;
+            if ((end = digits(s, i)) > i && end < len && s.charAt(end) == '.') {
+                minor = number(s, i, end);
+                i = end + 1;
+                if ((end = digits(s, i)) > i) {
+                    revision = number(s, i, end);
+                    i = end;
+                    final boolean dash = i < len && s.charAt(i) == '-'; // THE SEPARATOR IS NOT PART OF extra
+                    if (i < len && isSeparator(s.charAt(i))) i++;
+                    if (!hasLineTerminator(s, i)) { // '.' NEVER MATCHED LINE TERMINATORS
+                        this.major = major;
+                        this.minor = minor;
+                        this.revision = revision;
+                        this.extra = s.substring(i);
+                        this.preRelease = dash ? preReleaseEnd(this.extra) : 0;
+                        return;
+                    }
+                }
             }
-        } else {
-            this.major = 0;
-            this.minor = 0;
-            this.revision = 0;
-            this.extra = null;
         }
+        this.major = 0;
+        this.minor = 0;
+        this.revision = 0;
+        this.extra = null;
+        this.preRelease = 0;
+    }
+
+    /**
+     * Returns the shared instance for {@code version}, parsing it only the first time it is seen. Prefer
+     * this over the constructor when the same strings come up repeatedly (e.g. release feeds).
+     *
+     * @param version version string
+     * @return the cached version
+     */
+    public static VersionTool of(final String version) {
+        final String key = version == null ? "" : version;
+        final VersionTool cached = CACHE.get(key);
+        if (cached != null) return cached;
+        if (CACHE.size() >= CACHE_LIMIT) CACHE.clear(); // CHEAP BOUND; HOT STRINGS COME RIGHT BACK
+        return CACHE.computeIfAbsent(key, VersionTool::new);
     }
 
     /**
@@ -70,13 +113,30 @@ public class VersionTool implements Comparable<VersionTool> {
         return this.major == 0 && this.minor == 0 && this.revision == 0 && (this.extra == null || this.extra.isEmpty());
     }
 
+    /**
+     * @return whether {@code extra} is a {@code -} separated pre-release tag, e.g. {@code 1.0.0-beta.2}
+     */
+    public boolean isPreRelease() {
+        return this.preRelease > 0;
+    }
+
+    /**
+     * Orders by major, minor and revision, then by the pre-release tag following semantic versioning
+     * precedence: a version without one ranks above any pre-release of it ({@code 1.0.0-beta < 1.0.0}),
+     * dot-separated identifiers compare numerically when both are numeric and lexically otherwise, numeric
+     * identifiers rank below alphanumeric ones, and a longer identifier list wins a tie. Build metadata
+     * ({@code +...}) and {@code _} or whitespace separated qualifiers are ignored.
+     */
     @Override
     public int compareTo(final VersionTool o) {
-        int delta = this.major - o.major;
+        int delta = Integer.compare(this.major, o.major);
         if (delta == 0) {
-            delta = this.minor - o.minor;
+            delta = Integer.compare(this.minor, o.minor);
             if (delta == 0) {
-                delta = this.revision - o.revision;
+                delta = Integer.compare(this.revision, o.revision);
+                if (delta == 0) {
+                    delta = compareExtra(this.extra, this.preRelease, o.extra, o.preRelease);
+                }
             }
         }
         return delta;
@@ -86,4 +146,187 @@ public class VersionTool implements Comparable<VersionTool> {
     public String toString() {
         return this.isZero() ? "<Not Found>" : this.version;
     }
+
+    // SEMVER PRE-RELEASE PRECEDENCE, WALKING BOTH STRINGS IN PLACE
+    private static int compareExtra(final String a, final int aEnd, final String b, final int bEnd) {
+        if (aEnd == 0 || bEnd == 0) return Integer.compare(aEnd == 0 ? 1 : 0, bEnd == 0 ? 1 : 0); // RELEASE > PRE-RELEASE
+
+        int ai = 0, bi = 0;
+        while (ai < aEnd && bi < bEnd) {
+            int aj = a.indexOf('.', ai); if (aj < 0 || aj > aEnd) aj = aEnd;
+            int bj = b.indexOf('.', bi); if (bj < 0 || bj > bEnd) bj = bEnd;
+
+            final boolean aNum = digits(a, ai) == aj && aj > ai;
+            final boolean bNum = digits(b, bi) == bj && bj > bi;
+            final int delta;
+            if (aNum && bNum) {
+                delta = compareNumeric(a, ai, aj, b, bi, bj);
+            } else if (aNum != bNum) {
+                delta = aNum ? -1 : 1;
+            } else {
+                delta = compareRegion(a, ai, aj, b, bi, bj);
+            }
+            if (delta != 0) return delta;
+            ai = aj + 1;
+            bi = bj + 1;
+        }
+        return ai < aEnd ? 1 : bi < bEnd ? -1 : 0; // ALL SHARED IDENTIFIERS EQUAL: MORE IDENTIFIERS WIN
+    }
+
+    // LENGTH OF extra BEFORE ITS BUILD METADATA
+    private static int preReleaseEnd(final String extra) {
+        final int plus = extra.indexOf('+');
+        return plus < 0 ? extra.length() : plus;
+    }
+
+    // ARBITRARY-LENGTH NUMERIC COMPARE: IGNORE LEADING ZEROS, THEN LONGER IS BIGGER, THEN LEXICAL
+    private static int compareNumeric(final String a, int ai, final int aj, final String b, int bi, final int bj) {
+        while (ai < aj - 1 && a.charAt(ai) == '0') ai++;
+        while (bi < bj - 1 && b.charAt(bi) == '0') bi++;
+        final int delta = Integer.compare(aj - ai, bj - bi);
+        return delta != 0 ? delta : compareRegion(a, ai, aj, b, bi, bj);
+    }
+
+    private static int compareRegion(final String a, final int ai, final int aj, final String b, final int bi, final int bj) {
+        final int n = Math.min(aj - ai, bj - bi);
+        for (int k = 0; k < n; k++) {
+            final int delta = Character.compare(a.charAt(ai + k), b.charAt(bi + k));
+            if (delta != 0) return delta;
+        }
+        return Integer.compare(aj - ai, bj - bi);
+    }
+
+    // INDEX PAST THE RUN OF ASCII DIGITS STARTING AT from
+    private static int digits(final String s, int from) {
+        while (from < s.length() && s.charAt(from) >= '0' && s.charAt(from) <= '9') from++;
+        return from;
+    }
+
+    // SAME RESULT (AND NumberFormatException ON OVERFLOW) AS Integer.parseInt(s.substring(from, to))
+    private static int number(final String s, final int from, final int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            final int digit = s.charAt(i) - '0';
+            if (value > (Integer.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("For input string: \"" + s.substring(from, to) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static boolean isSeparator(final char c) {
+        return c == '-' || c == '_' || c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean hasLineTerminator(final String s, final int from) {
+        for (int i = from; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') return true;
+        }
+        return false;
+    }
+
+    /**
+     * Immutable set of items ordered by version, answering range queries by binary search instead of a
+     * linear {@link #atLeast}/{@link #inRange} scan: e.g. the newest asset of a release feed that is
+     * compatible with {@code [min, max)}. Items with equal versions keep their input order.
+     *
+     * @param <T> item type, e.g. a release or asset
+     */
+    public static final class VersionSet<T> {
+        private final VersionTool[] versions;
+        private final List<T> items;
+
+        private VersionSet(final VersionTool[] versions, final List<T> items) {
+            this.versions = versions;
+            this.items = items;
+        }
+
+        /**
+         * Builds a set of {@code items}, keyed by the version {@code key} extracts from each.
+         */
+        @SuppressWarnings("unchecked")
+        public static <T> VersionSet<T> of(final Collection<? extends T> items, final Function<? super T, VersionTool> key) {
+            final Object[][] pairs = new Object[items.size()][];
+            int i = 0;
+            for (final T item: items) {
+                pairs[i++] = new Object[] { key.apply(item), item };
+            }
+            Arrays.sort(pairs, (a, b) -> ((VersionTool) a[0]).compareTo((VersionTool) b[0])); // STABLE
+            final VersionTool[] versions = new VersionTool[pairs.length];
+            final List<T> sorted = new ArrayList<>(pairs.length);
+            for (i = 0; i < pairs.length; i++) {
+                versions[i] = (VersionTool) pairs[i][0];
+                sorted.add((T) pairs[i][1]);
+            }
+            return new VersionSet<>(versions, Collections.unmodifiableList(sorted));
+        }
+
+        /**
+         * Builds a set of plain versions.
+         */
+        public static VersionSet<VersionTool> of(final Collection<VersionTool> versions) {
+            return of(versions, Function.identity());
+        }
+
+        /**
+         * @return the item with the highest version in {@code [min, max)}, or {@code null} if none;
+         * a {@code null} bound is open
+         */
+        public T highest(final VersionTool min, final VersionTool max) {
+            final int from = this.lowerBound(min), to = this.lowerBound(max, this.versions.length);
+            return to > from ? this.items.get(to - 1) : null;
+        }
+
+        /**
+         * @return the item with the highest version, or {@code null} if the set is empty
+         */
+        public T highest() {
+            return this.highest(null, null);
+        }
+
+        /**
+         * @return every item whose version is in {@code [min, max)}, in ascending version order (a view);
+         * a {@code null} bound is open
+         */
+        public List<T> range(final VersionTool min, final VersionTool max) {
+            final int from = this.lowerBound(min), to = this.lowerBound(max, this.versions.length);
+            return to > from ? this.items.subList(from, to) : List.of();
+        }
+
+        /**
+         * @return every item whose version is at least {@code min}, in ascending version order (a view)
+         */
+        public List<T> atLeast(final VersionTool min) {
+            return this.range(min, null);
+        }
+
+        /**
+         * @return all items in ascending version order
+         */
+        public List<T> items() {
+            return this.items;
+        }
+
+        public int size() {
+            return this.versions.length;
+        }
+
+        private int lowerBound(final VersionTool v) {
+            return this.lowerBound(v, 0);
+        }
+
+        // FIRST INDEX WHOSE VERSION IS >= v, OR ifNull FOR AN OPEN BOUND
+        private int lowerBound(final VersionTool v, final int ifNull) {
+            if (v == null) return ifNull;
+            int lo = 0, hi = this.versions.length;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (this.versions[mid].compareTo(v) < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
 }
\ No newline at end of file
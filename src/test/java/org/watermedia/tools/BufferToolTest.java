@@ -0,0 +1,160 @@
+package org.watermedia.tools;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BufferToolTest {
+    @AfterEach
+    public void tearDown() {
+        BufferTool.leakDetection(false);
+        BufferTool.trim();
+    }
+
+    @Test
+    public void enablingDetectionKeepsOutstandingBuffersReleasable() {
+        final ByteBuffer before = BufferTool.acquire(64 * 1024);
+        BufferTool.leakDetection(true);
+        assertDoesNotThrow(() -> BufferTool.release(before));
+
+        // NOT TRACKED, SO NOT POOLED EITHER: THE NEXT ACQUIRE MUST NOT HAND IT OUT AGAIN
+        final ByteBuffer after = BufferTool.acquire(64 * 1024);
+        assertNotSame(before, after);
+        BufferTool.release(after);
+    }
+
+    @Test
+    public void doubleReleaseNeverPoolsTwice() {
+        BufferTool.leakDetection(true);
+        final ByteBuffer buffer = BufferTool.acquire(64 * 1024);
+        BufferTool.release(buffer);
+        BufferTool.release(buffer);
+
+        final ByteBuffer first = BufferTool.acquire(64 * 1024), second = BufferTool.acquire(64 * 1024);
+        assertNotSame(first, second);
+        BufferTool.release(first);
+        BufferTool.release(second);
+    }
+
+    @Test
+    public void doubleReleaseNeverPoolsTwiceWithoutDetection() {
+        final ByteBuffer buffer = BufferTool.acquire(64 * 1024);
+        BufferTool.release(buffer);
+        BufferTool.release(buffer);
+
+        final ByteBuffer first = BufferTool.acquire(64 * 1024), second = BufferTool.acquire(64 * 1024);
+        assertNotSame(first, second);
+        BufferTool.release(first);
+        BufferTool.release(second);
+    }
+
+    @Test
+    public void foreignBuffersAreNeverPooled() {
+        final ByteBuffer foreign = ByteBuffer.allocateDirect(64 * 1024);
+        BufferTool.release(foreign);
+        final ByteBuffer acquired = BufferTool.acquire(64 * 1024);
+        assertNotSame(foreign, acquired);
+        BufferTool.release(acquired);
+    }
+
+    @Test
+    public void disablingDetectionForgetsTrackedBuffers() {
+        BufferTool.leakDetection(true);
+        ByteBuffer leaked = BufferTool.acquire(64 * 1024);
+        BufferTool.leakDetection(false);
+        leaked = null;
+        System.gc();
+
+        final int[] reports = new int[1];
+        BufferTool.leakHandler(site -> reports[0]++);
+        BufferTool.leakDetection(true);
+        BufferTool.reportLeaks();
+        assertEquals(0, reports[0]);
+    }
+
+    @Test
+    public void frameRingDeliversWholeFramesInOrder() throws InterruptedException {
+        for (final BufferTool.RingPolicy policy: BufferTool.RingPolicy.values()) {
+            for (final boolean latest: new boolean[] { false, true }) {
+                this.stress(policy, latest);
+            }
+        }
+    }
+
+    @Test
+    public void frameRingRejectsUseAroundClose() {
+        final BufferTool.FrameRing ring = BufferTool.createFrameRing(2, 64, BufferTool.RingPolicy.DROP_OLDEST);
+        final ByteBuffer slot = ring.claim();
+        assertThrows(IllegalStateException.class, ring::close); // CLAIMED, NOT PUBLISHED
+        ring.publish();
+
+        final ByteBuffer frame = ring.acquireNext();
+        assertSame(slot, frame);
+        assertFalse(MemTool.free(frame)); // OWNED BY THE RING
+        BufferTool.release(frame);
+        assertThrows(IllegalStateException.class, ring::close); // STILL HELD
+        frame.putLong(0, 1); // SO STILL MAPPED
+        ring.release();
+
+        ring.close();
+        ring.close();
+        assertThrows(IllegalStateException.class, ring::claim);
+        assertThrows(IllegalStateException.class, ring::publish);
+        assertThrows(IllegalStateException.class, ring::acquireNext);
+        assertThrows(IllegalStateException.class, ring::acquireLatest);
+        assertThrows(IllegalStateException.class, ring::release);
+    }
+
+    // EVERY FRAME CARRIES ITS SEQUENCE AT BOTH ENDS: A TORN FRAME HAS TWO DIFFERENT ONES, A REORDERED ONE GOES BACKWARDS
+    private void stress(final BufferTool.RingPolicy policy, final boolean latest) throws InterruptedException {
+        final int frames = 100_000, frameBytes = 256;
+        final BufferTool.FrameRing ring = BufferTool.createFrameRing(4, frameBytes, policy);
+        final Thread producer = new Thread(() -> {
+            for (long seq = 0; seq < frames; seq++) {
+                final ByteBuffer slot = ring.claim();
+                slot.putLong(0, seq);
+                for (int i = 8; i < frameBytes - 8; i += 8) slot.putLong(i, seq ^ i);
+                slot.putLong(frameBytes - 8, seq);
+                ring.publish();
+            }
+        }, "FrameRing-Producer");
+        producer.start();
+
+        long last = -1, received = 0;
+        final long deadline = System.nanoTime() + 60_000_000_000L;
+        try {
+            while (last < frames - 1) {
+                assertTrue(System.nanoTime() < deadline, policy + (latest ? " latest" : " next") + " stalled at " + last);
+                final ByteBuffer frame = latest ? ring.acquireLatest() : ring.acquireNext();
+                if (frame == null) {
+                    Thread.yield(); // A BUSY SPIN WOULD STARVE THE PRODUCER ON A SINGLE CORE
+                    continue;
+                }
+                final long seq = frame.getLong(0);
+                for (int i = 8; i < frameBytes - 8; i += 8) assertEquals(seq ^ i, frame.getLong(i), "torn frame " + seq);
+                assertEquals(seq, frame.getLong(frameBytes - 8), "torn frame " + seq);
+                assertTrue(seq > last, policy + " delivered " + seq + " after " + last);
+                if (policy == BufferTool.RingPolicy.BLOCK && !latest) assertEquals(last + 1, seq);
+                last = seq;
+                received++;
+                ring.release();
+            }
+            producer.join(10_000);
+            assertFalse(producer.isAlive());
+            assertEquals(frames, received + ring.dropped());
+        } finally {
+            producer.interrupt();
+            producer.join(10_000);
+        }
+        ring.close();
+    }
+}
@@ -0,0 +1,172 @@
+package org.watermedia.tools;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DataToolTest {
+    // 4K, WITH A ROW COUNT THAT DOES NOT DIVIDE EVENLY INTO BANDS
+    private static final int W = 3840, H = 2162;
+
+    @TempDir
+    Path dir;
+
+    private ForkJoinPool pool;
+
+    @BeforeEach
+    public void setUp() {
+        this.pool = new ForkJoinPool(4); // THE BANDS RUN EVEN ON A SINGLE-CORE MACHINE
+    }
+
+    @AfterEach
+    public void tearDown() {
+        DataTool.parallelThreshold(1920 * 1080);
+        DataTool.parallelPool(ForkJoinPool.commonPool());
+        this.pool.shutdownNow();
+    }
+
+    @Test
+    public void parallelYuvMatchesSerial() {
+        final Random random = new Random(42);
+        for (final DataTool.YuvFormat format: DataTool.YuvFormat.values()) {
+            final int cw = format == DataTool.YuvFormat.I444 ? W : W / 2;
+            final int ch = format == DataTool.YuvFormat.I420 || format == DataTool.YuvFormat.NV12 || format == DataTool.YuvFormat.NV21 ? H / 2 : H;
+            final boolean semiPlanar = format == DataTool.YuvFormat.NV12 || format == DataTool.YuvFormat.NV21;
+            final int uvS = semiPlanar ? cw * 2 : cw;
+            final byte[] y = bytes(random, W * H), u = bytes(random, uvS * ch), v = bytes(random, uvS * ch);
+
+            for (final DataTool.YuvMatrix matrix: DataTool.YuvMatrix.values()) {
+                final int[] serial = this.convert(format, matrix, y, u, v, uvS, false);
+                final int[] parallel = this.convert(format, matrix, y, u, v, uvS, true);
+                assertArrayEquals(serial, parallel, format + "/" + matrix);
+
+                final ByteBuffer buffer = ByteBuffer.allocateDirect(W * H * 4);
+                DataTool.parallelThreshold(1);
+                DataTool.parallelPool(this.pool);
+                DataTool.yuvToBgra(format, matrix, y, u, v, W, H, W, uvS, buffer);
+                final int[] fromBuffer = new int[W * H];
+                buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(fromBuffer);
+                assertArrayEquals(serial, fromBuffer, format + "/" + matrix + " (buffer)");
+            }
+        }
+    }
+
+    @Test
+    public void cursorReadsEbmlVints() {
+        final DataTool.Cursor cursor = DataTool.cursor(buffer(0x81, 0x40, 0x02, 0xFF, 0x7F, 0xFF, 0x01, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF,
+                0x1A, 0x45, 0xDF, 0xA3, 0x42, 0x86, 0x00));
+        assertEquals(1, cursor.vint());
+        assertEquals(2, cursor.vint());
+        assertEquals(-1, cursor.vint()); // ALL ONES: UNKNOWN SIZE
+        assertEquals(-1, cursor.vint()); // SAME, IN TWO BYTES
+        assertEquals(-1, cursor.vint()); // SAME, IN EIGHT BYTES
+        assertEquals(0x1A45DFA3L, cursor.vintId());
+        assertEquals(0x4286L, cursor.vintId());
+        assertThrows(IllegalStateException.class, cursor::vint); // NO LENGTH MARKER IN THE FIRST BYTE
+    }
+
+    @Test
+    public void cursorReadsLeb128() {
+        final DataTool.Cursor cursor = DataTool.cursor(buffer(0xE5, 0x8E, 0x26, 0xC0, 0xBB, 0x78, 0x7F, 0x3F, 0x40, 0x80, 0x7F,
+                0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01,
+                0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x7F,
+                0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x01));
+        assertEquals(624485, cursor.uleb128());
+        assertEquals(-123456, cursor.sleb128());
+        assertEquals(-1, cursor.sleb128());
+        assertEquals(63, cursor.sleb128());
+        assertEquals(-64, cursor.sleb128()); // SIGN BIT OF A ONE-BYTE VALUE
+        assertEquals(-128, cursor.sleb128()); // SIGN BIT OF A TWO-BYTE VALUE
+        assertEquals(-1L, cursor.uleb128()); // 2^64 - 1
+        assertEquals(Long.MIN_VALUE, cursor.sleb128()); // TEN BYTES: NOTHING LEFT TO EXTEND
+        assertThrows(IllegalStateException.class, cursor::uleb128);
+    }
+
+    @Test
+    public void cursorReadsBitsAcrossBytes() {
+        final DataTool.Cursor msb = DataTool.cursor(buffer(0b1011_0011, 0b0101_1100, 0xAB));
+        assertEquals(0b101, msb.bits(3));
+        assertEquals(0b10011_01, msb.bits(7));
+        assertFalse(msb.bit());
+        assertEquals(1, msb.remaining()); // THE PARTIAL BYTE IS NOT COUNTED
+        assertEquals(0xAB, msb.u8()); // SKIPS THE REST OF THE PARTIAL BYTE
+        assertThrows(BufferUnderflowException.class, () -> msb.bits(1));
+
+        final DataTool.Cursor lsb = DataTool.cursor(buffer(0b1011_0011, 0b0101_1100, 0xAB));
+        assertEquals(0b011, lsb.bitsLsb(3));
+        assertEquals(0b00_10110, lsb.bitsLsb(7));
+        assertEquals(0b10111, lsb.bitsLsb(5));
+        assertEquals(0xAB, lsb.u8());
+
+        final DataTool.Cursor wide = DataTool.cursor(buffer(0xFF, 0x01, 0x23, 0x45, 0x67, 0x89, 0xAB, 0xCD, 0xEF, 0xFF));
+        assertEquals(0xF, wide.bits(4));
+        assertEquals(0xF0123456789ABCDEL, wide.bits(64));
+        assertEquals(0xF, wide.bits(4));
+    }
+
+    @Test
+    public void cursorBoundsNestedBoxes() {
+        final DataTool.Cursor cursor = DataTool.cursor(buffer(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15));
+        cursor.enter(10);
+        assertEquals(0, cursor.u8());
+        cursor.enter(4);
+        assertEquals(0x0102, cursor.u16());
+        assertThrows(BufferUnderflowException.class, cursor::u32); // 2 LEFT IN THE INNER BOX
+        assertThrows(BufferUnderflowException.class, () -> cursor.enter(3));
+        cursor.exit(); // SKIPS THE UNREAD REST
+        assertEquals(5, cursor.position());
+        assertEquals(10, cursor.limit());
+        assertThrows(BufferUnderflowException.class, () -> cursor.enter(6));
+        assertEquals(5, cursor.u8());
+        cursor.exit();
+        assertEquals(10, cursor.position());
+        assertEquals(16, cursor.limit());
+        assertEquals(0x0A0B0C0D0E0FL, cursor.be(6));
+        assertThrows(IllegalStateException.class, cursor::exit);
+    }
+
+    @Test
+    public void mappedCursorViewsOutliveClose() throws IOException {
+        final Path file = Files.write(this.dir.resolve("data.bin"), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        final ByteBuffer view;
+        try (final DataTool.Cursor cursor = DataTool.cursor(file)) {
+            cursor.skip(4);
+            view = cursor.buffer(4);
+        }
+        assertEquals(0x05060708, view.getInt(0));
+    }
+
+    private int[] convert(final DataTool.YuvFormat format, final DataTool.YuvMatrix matrix, final byte[] y, final byte[] u, final byte[] v,
+                          final int uvS, final boolean parallel) {
+        DataTool.parallelThreshold(parallel ? 1 : Integer.MAX_VALUE);
+        DataTool.parallelPool(parallel ? this.pool : ForkJoinPool.commonPool());
+        return DataTool.yuvToBgra(format, matrix, y, u, v, W, H, W, uvS, new int[W * H]);
+    }
+
+    private static byte[] bytes(final Random random, final int length) {
+        final byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static ByteBuffer buffer(final int... bytes) {
+        final ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+        for (final int b: bytes) buffer.put((byte) b);
+        return buffer.flip();
+    }
+}
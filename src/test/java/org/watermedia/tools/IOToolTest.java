@@ -0,0 +1,132 @@
+package org.watermedia.tools;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IOToolTest {
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    public void tearDown() {
+        IOTool.jarZipCacheClear();
+        IOTool.digestCache(null);
+    }
+
+    @Test
+    public void verifyBatchWritesDigestCacheOnce() throws IOException, InterruptedException {
+        final Path files = Files.createDirectories(this.dir.resolve("files")), cacheDir = Files.createDirectories(this.dir.resolve("cache"));
+        final Map<Path, String> expected = new HashMap<>();
+        for (int i = 0; i < 64; i++) {
+            final Path file = Files.writeString(files.resolve(i + ".txt"), "file " + i);
+            expected.put(file, HexFormat.of().formatHex(IOTool.sha256Digest().digest(("file " + i).getBytes(StandardCharsets.UTF_8))));
+        }
+        final Path cacheFile = cacheDir.resolve("digests.properties");
+        IOTool.digestCache(cacheFile);
+
+        try (final WatchService watcher = cacheDir.getFileSystem().newWatchService()) {
+            cacheDir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            IOTool.verifySha256(expected, false);
+
+            int writes = 0;
+            WatchKey key;
+            while ((key = watcher.poll(1, TimeUnit.SECONDS)) != null) {
+                for (final WatchEvent<?> event: key.pollEvents()) {
+                    if (event.context().toString().endsWith(".tmp")) writes++;
+                }
+                key.reset();
+            }
+            assertEquals(1, writes);
+        }
+
+        final Properties saved = new Properties();
+        try (final InputStream in = Files.newInputStream(cacheFile)) {
+            saved.load(in);
+        }
+        assertEquals(expected.size(), saved.size());
+    }
+
+    @Test
+    public void writeCopiesStreamsAndChannelsWithProgress() throws IOException {
+        final byte[] data = new byte[(int) IOTool.TRANSFER_CHUNK * 2 + 12345];
+        new Random(7).nextBytes(data);
+        final List<Long> reports = new ArrayList<>();
+        final Path stream = this.dir.resolve("stream.bin"), channel = this.dir.resolve("channel.bin");
+
+        assertTrue(IOTool.write(new ByteArrayInputStream(data), stream.toFile(), (transferred, total, rate) -> reports.add(transferred)));
+        assertArrayEquals(data, Files.readAllBytes(stream));
+        assertEquals(List.of(IOTool.TRANSFER_CHUNK, IOTool.TRANSFER_CHUNK * 2, (long) data.length), reports); // ONCE PER CHUNK, NOT PER READ
+
+        assertTrue(IOTool.write(Channels.newChannel(new ByteArrayInputStream(data)), channel.toFile(), null));
+        assertArrayEquals(data, Files.readAllBytes(channel));
+    }
+
+    @Test
+    public void jarReadZipKeepsClassLoadersApart() throws IOException {
+        try (final URLClassLoader a = this.loader("a", "first"); final URLClassLoader b = this.loader("b", "second")) {
+            assertEquals("first", IOTool.jarReadZip("bundle.zip", "entry.txt", a));
+            assertEquals("second", IOTool.jarReadZip("bundle.zip", "entry.txt", b));
+            assertEquals("first", IOTool.jarReadZip("bundle.zip", "entry.txt", a)); // FROM THE CONTENT CACHE
+        }
+    }
+
+    @Test
+    public void jarReadZipDeletesSpoolOfInvalidZip() throws IOException {
+        final Path root = Files.createDirectories(this.dir.resolve("bogus"));
+        Files.writeString(root.resolve("bundle.zip"), "not a zip");
+        final long before = spools();
+        try (final URLClassLoader loader = new URLClassLoader(new URL[] { root.toUri().toURL() }, null)) {
+            assertNull(IOTool.jarReadZip("bundle.zip", "entry.txt", loader));
+        }
+        assertEquals(before, spools());
+    }
+
+    // A LOADER WHOSE bundle.zip HOLDS entry.txt WITH content
+    private URLClassLoader loader(final String name, final String content) throws IOException {
+        final Path root = Files.createDirectories(this.dir.resolve(name));
+        try (final OutputStream out = Files.newOutputStream(root.resolve("bundle.zip")); final ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("entry.txt"));
+            zip.write(content.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        return new URLClassLoader(new URL[] { root.toUri().toURL() }, null);
+    }
+
+    private static long spools() throws IOException {
+        try (final Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(f -> f.getFileName().toString().startsWith("watermedia-") && f.getFileName().toString().endsWith(".spool")).count();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.watermedia.tools;
+
+import com.google.gson.JsonElement;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JsonToolTest {
+    @Test
+    public void extractReportsMalformedMatchAsIOException() {
+        final IOException e = assertThrows(IOException.class, () -> JsonTool.extract(new StringReader("{\"a\": {\"b\": ]}}"), (path, value) -> {}, "a"));
+        assertTrue(e.getMessage().contains("$.a"), e.getMessage());
+    }
+
+    @Test
+    public void extractReportsMalformedProjectionAsIOException() {
+        assertThrows(IOException.class, () -> JsonTool.extract(new StringReader("{\"a\": {\"x\": ]}}"), (path, value) -> {}, "a{x}"));
+    }
+
+    @Test
+    public void extractEmitsMatchesInDocumentOrder() throws IOException {
+        final List<String> seen = new ArrayList<>();
+        JsonTool.extract(new StringReader("{\"assets\": [{\"name\": \"a\", \"size\": 1}, {\"name\": \"b\", \"size\": 2}], \"tag\": \"v1\"}"),
+                (final String path, final JsonElement value) -> seen.add(path + "=" + value), "assets[*]{name}", "tag");
+        assertEquals(List.of("assets[*]{name}={\"name\":\"a\"}", "assets[*]{name}={\"name\":\"b\"}", "tag=\"v1\""), seen);
+    }
+}
@@ -0,0 +1,38 @@
+package org.watermedia.tools;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MemToolTest {
+    @AfterEach
+    public void tearDown() {
+        BufferTool.trim();
+    }
+
+    @Test
+    public void freeRefusesPooledBuffers() {
+        final ByteBuffer buffer = BufferTool.acquire(64 * 1024);
+        BufferTool.release(buffer);
+        assertFalse(MemTool.free(buffer)); // THE POOL OWNS IT NOW
+
+        final ByteBuffer again = BufferTool.acquire(64 * 1024);
+        assertSame(buffer, again);
+        again.putLong(0, 42); // STILL MAPPED
+        assertTrue(MemTool.free(again));
+        assertFalse(MemTool.free(again));
+    }
+
+    @Test
+    public void freeIgnoresDuplicatesAndForeignBuffers() {
+        final ByteBuffer buffer = MemTool.allocate("MemToolTest", 4096);
+        assertFalse(MemTool.free(buffer.duplicate()));
+        assertFalse(MemTool.free(ByteBuffer.allocateDirect(4096)));
+        assertTrue(MemTool.free(buffer));
+    }
+}
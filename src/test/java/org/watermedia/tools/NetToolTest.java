@@ -0,0 +1,232 @@
+package org.watermedia.tools;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class NetToolTest {
+    private static final byte[] DATA = new byte[(int) NetTool.MIN_SEGMENTED_BYTES + 12345];
+    static {
+        new Random(5).nextBytes(DATA);
+    }
+
+    @TempDir
+    Path dir;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private volatile boolean failRanges;
+    private volatile String etag = "\"v1\"";
+    private final AtomicInteger unconditional = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.executor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/file", this::file);
+        this.server.createContext("/stall", this::stall);
+        this.server.createContext("/json", this::json);
+        this.server.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        NetTool.readTimeout(Duration.ofSeconds(60));
+        NetTool.cache(null, 0);
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void resumeDiscardsStateWhenPartFileIsGone() throws IOException {
+        final Path dest = this.dir.resolve("file.bin");
+        this.failRanges = true;
+        assertThrows(IOException.class, () -> NetTool.download(this.url("/file"), dest, 4));
+        assertTrue(Files.exists(this.dir.resolve("file.bin.part.state")));
+
+        Files.delete(this.dir.resolve("file.bin.part"));
+        this.failRanges = false;
+        NetTool.download(this.url("/file"), dest, 4);
+        assertArrayEquals(DATA, Files.readAllBytes(dest));
+    }
+
+    @Test
+    public void resumeAfterFailureCompletesTheFile() throws IOException {
+        final Path dest = this.dir.resolve("file.bin");
+        this.failRanges = true;
+        assertThrows(IOException.class, () -> NetTool.download(this.url("/file"), dest, 4));
+
+        this.failRanges = false;
+        NetTool.download(this.url("/file"), dest, 4);
+        assertArrayEquals(DATA, Files.readAllBytes(dest));
+        assertFalse(Files.exists(this.dir.resolve("file.bin.part")));
+        assertFalse(Files.exists(this.dir.resolve("file.bin.part.state")));
+    }
+
+    @Test
+    public void failedDownloadWithoutValidatorDeletesPartFile() {
+        final Path dest = this.dir.resolve("file.bin");
+        this.etag = null;
+        this.failRanges = true;
+        assertThrows(IOException.class, () -> NetTool.download(this.url("/file"), dest, 4));
+        assertFalse(Files.exists(this.dir.resolve("file.bin.part")));
+        assertFalse(Files.exists(dest));
+    }
+
+    @Test
+    public void getFailsWhenBodyStalls() {
+        NetTool.readTimeout(Duration.ofMillis(500));
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertThrows(HttpTimeoutException.class, () -> NetTool.get(this.url("/stall")));
+        });
+    }
+
+    @Test
+    public void getAsyncFailsWhenBodyStalls() {
+        NetTool.readTimeout(Duration.ofMillis(500));
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            final ExecutionException e = assertThrows(ExecutionException.class, () -> NetTool.getAsync(this.url("/stall")).get());
+            assertInstanceOf(HttpTimeoutException.class, e.getCause());
+        });
+    }
+
+    @Test
+    public void downloadAsyncFailsAndCleansUpWhenBodyStalls() {
+        final Path dest = this.dir.resolve("stalled.bin");
+        NetTool.readTimeout(Duration.ofMillis(500));
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            final ExecutionException e = assertThrows(ExecutionException.class, () -> NetTool.downloadAsync(this.url("/stall"), dest).get());
+            assertInstanceOf(HttpTimeoutException.class, e.getCause());
+        });
+        assertFalse(Files.exists(dest));
+    }
+
+    @Test
+    public void notModifiedWithUnreadableBodyRefetches() throws IOException {
+        final Path cache = this.dir.resolve("cache");
+        NetTool.cache(cache, 1024 * 1024);
+        assertEquals("{\"v\":1}", NetTool.get(this.url("/json")));
+        assertEquals(1, this.unconditional.get());
+
+        // A BODY THAT NO LONGER MATCHES ITS META, THEN ONE THAT IS GONE: BOTH MUST FETCH THE FULL RESPONSE AGAIN
+        final Path body;
+        try (final Stream<Path> files = Files.list(cache)) {
+            body = files.filter(f -> f.toString().endsWith(".body")).findFirst().orElseThrow();
+        }
+        Files.writeString(body, "{\"stale\":true}");
+        assertEquals("{\"v\":1}", NetTool.get(this.url("/json")));
+        assertEquals(2, this.unconditional.get());
+
+        Files.delete(body);
+        assertEquals("{\"v\":1}", NetTool.get(this.url("/json")));
+        assertEquals(3, this.unconditional.get());
+
+        assertEquals("{\"v\":1}", NetTool.get(this.url("/json"))); // INTACT AGAIN: SERVED FROM A 304
+        assertEquals(3, this.unconditional.get());
+    }
+
+    @Test
+    public void verifiedDownloadGetsDefaultPermissions() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        final Path dest = this.dir.resolve("verified.bin");
+        NetTool.download(this.url("/file"), dest, HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(DATA)));
+        assertArrayEquals(DATA, Files.readAllBytes(dest));
+
+        final Path plain = Files.createFile(this.dir.resolve("plain.bin"));
+        assertEquals(Files.getPosixFilePermissions(plain), Files.getPosixFilePermissions(dest));
+    }
+
+    @Test
+    public void verifiedDownloadLeavesNothingOnMismatch() throws IOException {
+        final Path dest = this.dir.resolve("verified.bin");
+        assertThrows(IOException.class, () -> NetTool.download(this.url("/file"), dest, "00".repeat(32)));
+        try (final Stream<Path> files = Files.list(this.dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private String url(final String path) {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + path;
+    }
+
+    // ANSWERS 304 TO A MATCHING If-None-Match, COUNTING THE REQUESTS THAT HAD NONE
+    private void json(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getResponseHeaders().set("ETag", "\"j1\"");
+            if ("\"j1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            this.unconditional.incrementAndGet();
+            final byte[] body = "{\"v\":1}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    // SENDS THE HEADERS AND A FEW BYTES, THEN GOES SILENT UNTIL THE SERVER STOPS
+    private void stall(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.sendResponseHeaders(200, 100);
+            final OutputStream out = exchange.getResponseBody();
+            out.write(DATA, 0, 10);
+            out.flush();
+            Thread.sleep(30_000);
+        } catch (final InterruptedException | IOException ignored) {}
+    }
+
+    // SERVES DATA, HONORING "Range: bytes=a-b" UNLESS failRanges IS SET
+    private void file(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            if (this.etag != null) exchange.getResponseHeaders().set("ETag", this.etag);
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            int from = 0, to = DATA.length;
+            if (range != null) {
+                if (this.failRanges) {
+                    exchange.sendResponseHeaders(500, -1);
+                    return;
+                }
+                final String[] bounds = range.substring("bytes=".length()).split("-");
+                from = Integer.parseInt(bounds[0]);
+                to = Integer.parseInt(bounds[1]) + 1;
+            }
+            exchange.sendResponseHeaders(range != null ? 206 : 200, to - from);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(DATA, from, to - from);
+            } catch (final IOException ignored) {} // CLIENTS STOP READING THE FIRST RESPONSE AFTER SEGMENT 0
+        }
+    }
+}
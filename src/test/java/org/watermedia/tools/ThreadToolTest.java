@@ -0,0 +1,109 @@
+package org.watermedia.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ThreadToolTest {
+    @Test
+    public void meteredPoolRemovesTasksAndTheirWrappers() throws InterruptedException {
+        final ThreadPoolExecutor pool = (ThreadPoolExecutor) ThreadTool.createRecommendedThreadPool("ThreadToolTest-Remove", Thread.NORM_PRIORITY);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            this.occupy(pool, pool.getMaximumPoolSize(), release);
+            final Runnable first = () -> {}, second = () -> {};
+            pool.execute(first);
+            pool.execute(second);
+            assertEquals(2, pool.getQueue().size());
+
+            assertTrue(pool.remove(first));
+            assertFalse(pool.remove(first));
+            assertTrue(pool.remove(pool.getQueue().peek())); // THE WRAPPER, AS ThreadPoolExecutor.execute PASSES IT
+            assertEquals(0, pool.getQueue().size());
+        } finally {
+            release.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void lanePoolRemovesOneEntryPerCall() throws InterruptedException {
+        final ThreadTool.LanePool pool = ThreadTool.createLanePool("ThreadToolTest-Lanes", 1, Thread.NORM_PRIORITY);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            this.occupy(pool, 1, release);
+            final Runnable twice = () -> {};
+            pool.execute(twice);
+            pool.execute(ThreadTool.Lane.BACKGROUND, twice);
+            pool.execute(ThreadTool.Lane.URGENT, () -> {});
+            assertEquals(3, pool.getQueue().size());
+
+            assertTrue(pool.remove(twice));
+            assertEquals(2, pool.getQueue().size());
+            assertTrue(pool.remove(pool.getQueue().peek())); // THE WRAPPER, AS ThreadPoolExecutor.execute PASSES IT
+            assertEquals(1, pool.getQueue().size());
+            assertTrue(pool.remove(twice));
+            assertFalse(pool.remove(twice));
+            assertEquals(0, pool.getQueue().size());
+            assertNull(pool.getQueue().poll());
+        } finally {
+            release.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void taskGroupJoinsReportCancelledSubtasks() throws Exception {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final CountDownLatch never = new CountDownLatch(1);
+        try {
+            final ThreadTool.TaskGroup<String> raced = ThreadTool.createTaskGroup(executor);
+            raced.fork(() -> "fast");
+            raced.fork(() -> {
+                never.await();
+                return "slow";
+            });
+            assertEquals("fast", raced.joinAny(Duration.ofSeconds(5)));
+            assertThrows(CancellationException.class, () -> raced.joinAll(Duration.ofSeconds(5))); // THE LOSER HAS NO VALUE
+
+            final ThreadTool.TaskGroup<String> closed = ThreadTool.createTaskGroup(executor);
+            closed.fork(() -> {
+                never.await();
+                return "slow";
+            });
+            closed.close();
+            assertThrows(CancellationException.class, () -> closed.joinAny(Duration.ofSeconds(5)));
+            assertThrows(CancellationException.class, () -> closed.joinAll(Duration.ofSeconds(5)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // KEEPS threads WORKERS BUSY UNTIL release, SO LATER TASKS STAY QUEUED
+    private void occupy(final ThreadPoolExecutor pool, final int threads, final CountDownLatch release) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException ignored) {}
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+}
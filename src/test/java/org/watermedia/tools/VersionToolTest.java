@@ -0,0 +1,96 @@
+package org.watermedia.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VersionToolTest {
+    // THE EXPRESSION THE SCANNER REPLACED
+    private static final Pattern VERSION_PATTERN = Pattern.compile("(\\d+)\\.(\\d+)\\.(\\d+)[\\-_\\s]?(.*)");
+
+    @Test
+    public void parsesLikeTheOldExpression() {
+        for (final String version: new String[] {
+                "", "1", "1.2", "1.2.", "1.2.3", "01.002.0003", "1.2.3-beta", "1.2.3_mc1.20.1", "1.2.3 build 5", "1.2.3\tx",
+                "1.2.3beta", "1.2.3-", "1.2.3--x", "1.2.3\n", "1.2.3\nx", "1.2.3\r\n", "1.2.3-a\nb", "1.2.3 ", "1.2.3-a\u0085",
+                "1.2.3\u000B", "1.2.3\f", "a1.2.3", " 1.2.3", "1..3", "1.2.3.4", "١.2.3",
+                "2147483647.0.0", "2147483648.0.0", "1.99999999999.0", "1.0.2147483648-x"
+        }) {
+            assertEquals(regex(version), scanned(version), version);
+        }
+    }
+
+    @Test
+    public void ordersPreReleasesBySemver() {
+        final List<String> ordered = List.of("1.0.0-1", "1.0.0-2", "1.0.0-10", "1.0.0-alpha", "1.0.0-alpha.1", "1.0.0-alpha.beta",
+                "1.0.0-beta", "1.0.0-beta.2", "1.0.0-beta.11", "1.0.0-rc.1", "1.0.0", "1.0.1-0", "1.0.1");
+        for (int i = 0; i < ordered.size(); i++) {
+            for (int j = 0; j < ordered.size(); j++) {
+                final int expected = Integer.signum(Integer.compare(i, j));
+                assertEquals(expected, Integer.signum(new VersionTool(ordered.get(i)).compareTo(new VersionTool(ordered.get(j)))), ordered.get(i) + " vs " + ordered.get(j));
+            }
+        }
+        assertEquals(0, new VersionTool("1.0.0-beta+exp.sha.5114f85").compareTo(new VersionTool("1.0.0-beta+build.1")));
+        assertEquals(0, new VersionTool("1.0.0-007").compareTo(new VersionTool("1.0.0-7")));
+    }
+
+    @Test
+    public void buildQualifiersDoNotAffectOrdering() {
+        final VersionTool qualified = new VersionTool("2.0.0_mc1.20.1");
+        assertFalse(qualified.isPreRelease());
+        assertTrue(qualified.atLeast(new VersionTool("2.0.0")));
+        assertEquals(0, qualified.compareTo(new VersionTool("2.0.0 beta")));
+        assertEquals(0, qualified.compareTo(new VersionTool("2.0.0+build")));
+        assertTrue(qualified.atLeast(new VersionTool("2.0.0-rc.1")));
+        assertTrue(new VersionTool("2.0.0-rc.1").isPreRelease());
+        assertFalse(new VersionTool("2.0.0-").isPreRelease());
+        assertFalse(new VersionTool("2.0.0-+build").isPreRelease());
+    }
+
+    @Test
+    public void versionSetAnswersHalfOpenRanges() {
+        final VersionTool.VersionSet<String> set = VersionTool.VersionSet.of(List.of("1.2.0", "1.0.0", "2.0.0-rc.1", "1.1.0_b", "2.0.0", "1.1.0_a", "3.0.0"),
+                VersionTool::new);
+        assertEquals(List.of("1.0.0", "1.1.0_b", "1.1.0_a", "1.2.0", "2.0.0-rc.1", "2.0.0", "3.0.0"), set.items()); // EQUAL VERSIONS KEEP INPUT ORDER
+
+        assertEquals("1.2.0", set.highest(new VersionTool("1.0.0"), new VersionTool("2.0.0-rc.1")));
+        assertEquals("2.0.0-rc.1", set.highest(null, new VersionTool("2.0.0")));
+        assertEquals("3.0.0", set.highest());
+        assertNull(set.highest(new VersionTool("3.0.1"), null));
+        assertNull(set.highest(new VersionTool("1.5.0"), new VersionTool("1.6.0")));
+        assertNull(set.highest(new VersionTool("2.0.0"), new VersionTool("1.0.0")));
+
+        assertEquals(List.of("1.1.0_b", "1.1.0_a", "1.2.0"), set.range(new VersionTool("1.1.0"), new VersionTool("2.0.0-0")));
+        assertEquals(List.of("1.0.0"), set.range(null, new VersionTool("1.1.0")));
+        assertEquals(List.of("2.0.0", "3.0.0"), set.atLeast(new VersionTool("2.0.0")));
+        assertEquals(List.of(), set.range(new VersionTool("3.0.0"), new VersionTool("3.0.0")));
+        assertEquals(0, VersionTool.VersionSet.of(List.<VersionTool>of()).size());
+        assertNull(VersionTool.VersionSet.of(List.<VersionTool>of()).highest());
+    }
+
+    private static String scanned(final String version) {
+        try {
+            final VersionTool v = new VersionTool(version);
+            return v.major + "." + v.minor + "." + v.revision + "|" + v.extra;
+        } catch (final NumberFormatException e) {
+            return "NumberFormatException";
+        }
+    }
+
+    private static String regex(final String version) {
+        final Matcher matcher = VERSION_PATTERN.matcher(version);
+        if (!matcher.matches()) return "0.0.0|null";
+        try {
+            return Integer.parseInt(matcher.group(1)) + "." + Integer.parseInt(matcher.group(2)) + "." + Integer.parseInt(matcher.group(3)) + "|" + matcher.group(4);
+        } catch (final NumberFormatException e) {
+            return "NumberFormatException";
+        }
+    }
+}